@@ -0,0 +1,217 @@
+package cn.edu.hitsz.compiler;
+
+import cn.edu.hitsz.compiler.asm.AssemblyGenerator;
+import cn.edu.hitsz.compiler.lexer.LexicalAnalyzer;
+import cn.edu.hitsz.compiler.lexer.TokenDumper;
+import cn.edu.hitsz.compiler.lexer.TokenKind;
+import cn.edu.hitsz.compiler.parser.IRGenerator;
+import cn.edu.hitsz.compiler.parser.ParseDiagnostic;
+import cn.edu.hitsz.compiler.parser.ProductionCollector;
+import cn.edu.hitsz.compiler.parser.SemanticAnalyzer;
+import cn.edu.hitsz.compiler.parser.SyntaxAnalyzer;
+import cn.edu.hitsz.compiler.parser.table.GrammarInfo;
+import cn.edu.hitsz.compiler.parser.table.ParseTable;
+import cn.edu.hitsz.compiler.symtab.SymbolTable;
+import cn.edu.hitsz.compiler.utils.FilePathConfig;
+import cn.edu.hitsz.compiler.utils.FileUtils;
+import cn.edu.hitsz.compiler.utils.IREmulator;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Objects;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+/**
+ * 批量编译多个源文件
+ * <br>
+ * 用法:
+ * <pre>
+ *     java cn.edu.hitsz.compiler.BatchCompiler 输出目录 源文件或目录...
+ * </pre>
+ * 码点, 语法与 LR 分析表只加载一次, 作为只读的共享状态; 之后每个源文件在 {@link ForkJoinPool} 上独立地完成
+ * 词法分析, 语法分析, 语义分析, IR 生成与汇编生成, 各自使用自己的符号表与观察者.
+ * <br>
+ * 每个源文件的输出放在输出目录下的一个子目录中, 文件名与 {@link FilePathConfig} 中的输出文件相同.
+ * 直接给出的源文件以文件名为子目录名, 目录中的源文件以其相对该目录的路径为子目录名.
+ * 语法分析开启了错误恢复, 一个文件中的所有语法错误会一并报告.
+ * 某个文件编译失败不影响其它文件, 全部完成后汇总报告失败的文件.
+ */
+public class BatchCompiler {
+    public static void main(String[] args) {
+        if (args.length < 2) {
+            System.out.println("Usage: BatchCompiler <output-dir> <source-file-or-dir>...");
+            return;
+        }
+
+        final var outputRoot = Paths.get(args[0]);
+        final var jobs = collectJobs(outputRoot, List.of(args).subList(1, args.length));
+
+        // 共享的只读状态: 码点, 语法与分析表, 在启动任何编译任务之前加载完毕
+        TokenKind.loadTokenKinds();
+        GrammarInfo.getBeginProduction();
+        final var lrTable = Main.loadParseTable();
+
+        final var compiler = new BatchCompiler(lrTable, ForkJoinPool.commonPool());
+        final var failures = compiler.run(jobs);
+        System.out.printf("已编译 %d 个文件, %d 个失败%n", jobs.size(), failures.size());
+        for (final var failure : failures) {
+            System.out.println(failure);
+        }
+        if (!failures.isEmpty()) {
+            System.exit(1);
+        }
+    }
+
+    /**
+     * 一个编译任务
+     *
+     * @param source    源文件
+     * @param outputDir 输出目录
+     */
+    public record Job(Path source, Path outputDir) {
+    }
+
+    /**
+     * @param lrTable 共享的分析表, 不能被修改
+     * @param pool    执行编译任务的线程池
+     */
+    public BatchCompiler(ParseTable lrTable, ForkJoinPool pool) {
+        this.lrTable = lrTable;
+        this.pool = pool;
+    }
+
+    /**
+     * 并行执行编译任务, 调用前需要已经加载了码点 ({@link TokenKind#loadTokenKinds()})
+     *
+     * @param jobs 编译任务
+     * @return 失败任务的说明, 按任务的顺序排列
+     */
+    public List<String> run(List<Job> jobs) {
+        final var tasks = new ArrayList<ForkJoinTask<String>>();
+        for (final var job : jobs) {
+            tasks.add(pool.submit(() -> {
+                try {
+                    compile(job);
+                    return null;
+                } catch (RuntimeException e) {
+                    return "%s: %s".formatted(job.source(), e);
+                }
+            }));
+        }
+
+        final var failures = new ArrayList<String>();
+        for (final var task : tasks) {
+            final var failure = task.join();
+            if (failure != null) {
+                failures.add(failure);
+            }
+        }
+        return failures;
+    }
+
+    /**
+     * 编译一个源文件, 流程与 {@link Main} 相同, 所有可变状态都属于这一次编译
+     *
+     * @param job 编译任务
+     */
+    public void compile(Job job) {
+        try {
+            Files.createDirectories(job.outputDir());
+        } catch (IOException e) {
+            throw new RuntimeException("IO Exception on " + job.outputDir(), e);
+        }
+
+        final var symbolTable = new SymbolTable();
+
+        final var lexer = new LexicalAnalyzer(symbolTable);
+        final var productionCollector = new ProductionCollector(GrammarInfo.getBeginProduction());
+        final var irGenerator = new IRGenerator();
+        // 分析中途出错时也要关闭源文件与 token 文件, 否则批量编译中每个失败的文件都会泄漏文件描述符
+        try (lexer; final var tokenDumper = new TokenDumper(output(job, FilePathConfig.TOKEN_PATH))) {
+            lexer.loadFile(job.source().toString());
+            lexer.addTokenObserver(tokenDumper);
+
+            final var parser = new SyntaxAnalyzer(symbolTable);
+            parser.loadTokens(lexer.tokenIterator());
+            parser.loadLRTable(lrTable);
+            // 出错时继续分析, 一次报告文件中所有的语法错误
+            parser.enableErrorRecovery(GrammarInfo.getNonTerminal("S"), TokenKind.fromString("Semicolon"));
+
+            parser.registerObserver(productionCollector);
+            parser.registerObserver(new SemanticAnalyzer());
+            parser.registerObserver(irGenerator);
+
+            parser.run();
+            if (!parser.getDiagnostics().isEmpty()) {
+                throw new RuntimeException(parser.getDiagnostics().stream()
+                    .map(ParseDiagnostic::toString)
+                    .collect(Collectors.joining("; ")));
+            }
+        }
+
+        symbolTable.dumpTableWithoutType(output(job, FilePathConfig.OLD_SYMBOL_TABLE));
+        productionCollector.dumpToFile(output(job, FilePathConfig.PARSER_PATH));
+        symbolTable.dumpTable(output(job, FilePathConfig.NEW_SYMBOL_TABLE));
+        final var instructions = irGenerator.getIR();
+        irGenerator.dumpIR(output(job, FilePathConfig.INTERMEDIATE_CODE_PATH));
+
+        final var emulator = IREmulator.load(instructions);
+        FileUtils.writeFile(output(job, FilePathConfig.EMULATE_RESULT),
+            emulator.execute().map(Objects::toString).orElse("No return value"));
+
+        final var asmGenerator = new AssemblyGenerator();
+        asmGenerator.loadIR(instructions);
+        asmGenerator.run();
+        asmGenerator.dump(output(job, FilePathConfig.ASSEMBLY_LANGUAGE_PATH));
+    }
+
+    /**
+     * 由命令行参数生成编译任务, 目录会被递归展开
+     *
+     * @param outputRoot 输出目录
+     * @param sources    源文件或目录
+     * @return 编译任务
+     */
+    public static List<Job> collectJobs(Path outputRoot, List<String> sources) {
+        final var jobs = new ArrayList<Job>();
+        final var outputDirs = new HashSet<Path>();
+        for (final var source : sources) {
+            final var path = Paths.get(source);
+            final List<Path> files;
+            if (Files.isDirectory(path)) {
+                try (Stream<Path> walk = Files.walk(path)) {
+                    files = walk.filter(Files::isRegularFile).sorted().toList();
+                } catch (IOException e) {
+                    throw new RuntimeException("IO Exception on " + path, e);
+                }
+            } else {
+                files = List.of(path);
+            }
+
+            for (final var file : files) {
+                final var relative = Files.isDirectory(path) ? path.relativize(file) : file.getFileName();
+                final var outputDir = outputRoot.resolve(relative);
+                if (!outputDirs.add(outputDir)) {
+                    throw new RuntimeException("Duplicated output directory " + outputDir + " for " + file);
+                }
+                jobs.add(new Job(file, outputDir));
+            }
+        }
+        return jobs;
+    }
+
+    private static String output(Job job, String configPath) {
+        return job.outputDir().resolve(Paths.get(configPath).getFileName()).toString();
+    }
+
+    private final ParseTable lrTable;
+    private final ForkJoinPool pool;
+}
@@ -2,18 +2,25 @@ package cn.edu.hitsz.compiler;
 
 import cn.edu.hitsz.compiler.asm.AssemblyGenerator;
 import cn.edu.hitsz.compiler.lexer.LexicalAnalyzer;
+import cn.edu.hitsz.compiler.lexer.TokenDumper;
 import cn.edu.hitsz.compiler.lexer.TokenKind;
 import cn.edu.hitsz.compiler.parser.IRGenerator;
 import cn.edu.hitsz.compiler.parser.ProductionCollector;
 import cn.edu.hitsz.compiler.parser.SemanticAnalyzer;
 import cn.edu.hitsz.compiler.parser.SyntaxAnalyzer;
+import cn.edu.hitsz.compiler.parser.table.BinaryTableFormat;
+import cn.edu.hitsz.compiler.parser.table.CompiledLRTable;
 import cn.edu.hitsz.compiler.parser.table.GrammarInfo;
+import cn.edu.hitsz.compiler.parser.table.ParseTable;
+import cn.edu.hitsz.compiler.parser.table.TableGenerator;
 import cn.edu.hitsz.compiler.parser.table.TableLoader;
 import cn.edu.hitsz.compiler.symtab.SymbolTable;
 import cn.edu.hitsz.compiler.utils.FilePathConfig;
 import cn.edu.hitsz.compiler.utils.FileUtils;
 import cn.edu.hitsz.compiler.utils.IREmulator;
 
+import java.nio.file.Files;
+import java.nio.file.Paths;
 import java.util.Objects;
 
 public class Main {
@@ -23,24 +30,19 @@ public class Main {
         final var symbolTable = new SymbolTable();
 
         // 词法分析
+        // 词法分析器以迭代器的形式按需工作, 与后面的语法分析交叠进行; 词法单元在识别的同时被输出到文件
         final var lexer = new LexicalAnalyzer(symbolTable);
         lexer.loadFile(FilePathConfig.SRC_CODE_PATH);
-        lexer.run();
-        lexer.dumpTokens(FilePathConfig.TOKEN_PATH);
-        System.out.println("词法分析已完成");
-        final var tokens = lexer.getTokens();
-        symbolTable.dumpTable(FilePathConfig.OLD_SYMBOL_TABLE);
-        System.out.println("符号表构建已完成");
+        final var tokenDumper = new TokenDumper(FilePathConfig.TOKEN_PATH);
+        lexer.addTokenObserver(tokenDumper);
+        final var tokens = lexer.tokenIterator();
 
-        // 读取第三方程序构造的 LR 分析表
-        final var tableLoader = new TableLoader();
-        final var lrTable = tableLoader.load(FilePathConfig.LR1_TABLE_PATH);
+        // 读取 LR 分析表: 优先使用预编译的二进制分析表, 不存在或与语法不符时读取第三方程序构造的 CSV
+        final var lrTable = loadParseTable();
 
         // // 或使用框架自带部分直接从 grammar.txt 构造 LR 分析表
-        // final var tableGenerator = new TableGenerator();
-        // tableGenerator.run();
-        // final var lrTable = tableGenerator.getTable();
-        // lrTable.dumpTable("data/out/lrTable.csv");
+        // // 构造结果缓存在 data/cache 中, 语法文件与码点文件不变时再次运行会直接加载
+        // final var lrTable = TableCache.load(TableGenerator.Method.LALR);
 
         // 加载 LR 分析驱动程序
         final var parser = new SyntaxAnalyzer(symbolTable);
@@ -61,7 +63,15 @@ public class Main {
         parser.registerObserver(irGenerator);
 
         // 执行语法解析并在解析过程中依次调用各 Observer
-        parser.run();
+        // 读到 EOF 时 token 文件与源文件会自动关闭; 分析中途出错时也要关闭, 使已识别的词法单元写入文件
+        try (lexer; tokenDumper) {
+            parser.run();
+        }
+        System.out.println("词法分析已完成");
+
+        // 语义分析前的符号表只比分析后的少了类型信息
+        symbolTable.dumpTableWithoutType(FilePathConfig.OLD_SYMBOL_TABLE);
+        System.out.println("符号表构建已完成");
 
         // 各 Observer 输出结果
         productionCollector.dumpToFile(FilePathConfig.PARSER_PATH);
@@ -80,4 +90,36 @@ public class Main {
         asmGenerator.dump(FilePathConfig.ASSEMBLY_LANGUAGE_PATH);
         System.out.println("汇编代码已生成");
     }
+
+    /**
+     * 加载 LR 分析表
+     *
+     * @return 编译后的分析表
+     * @see cn.edu.hitsz.compiler.parser.table.TableCompiler 生成二进制分析表的工具
+     */
+    static ParseTable loadParseTable() {
+        final var binaryPath = FilePathConfig.LR1_TABLE_BINARY_PATH;
+        if (Files.exists(Paths.get(binaryPath))) {
+            try {
+                // 二进制分析表必须由当前的语法文件构造: 或是由将要退回读取的 CSV 转换而来,
+                // 或是由当前版本的 TableGenerator 以任一方法构造, 否则视为过期
+                final var methods = TableGenerator.Method.values();
+                final var sourceHashes = new long[methods.length + 1];
+                sourceHashes[0] = BinaryTableFormat.hashFiles(FilePathConfig.LR1_TABLE_PATH);
+                for (int i = 0; i < methods.length; i++) {
+                    sourceHashes[i + 1] = BinaryTableFormat.hashGenerator(methods[i]);
+                }
+                return BinaryTableFormat.read(
+                    binaryPath,
+                    BinaryTableFormat.hashGrammar(FilePathConfig.GRAMMAR_PATH),
+                    sourceHashes
+                );
+            } catch (RuntimeException e) {
+                System.out.println("二进制分析表不可用, 改为读取 CSV: " + e.getMessage());
+            }
+        }
+
+        final var tableLoader = new TableLoader();
+        return CompiledLRTable.compile(tableLoader.load(FilePathConfig.LR1_TABLE_PATH));
+    }
 }
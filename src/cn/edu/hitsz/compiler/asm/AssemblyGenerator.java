@@ -31,6 +31,9 @@ public class AssemblyGenerator {
 
     private RegVarMap regvarMap = new RegVarMap();
 
+    // 已分配的临时变量数
+    private int tempCount = 0;
+
     // 记录变量最后一次使用的行号
     private final Map<IRValue, Integer> LastUse = new HashMap<>();
 
@@ -49,6 +52,13 @@ public class AssemblyGenerator {
     public void loadIR(List<Instruction> originInstructions) {
         // TODO: 读入前端提供的中间代码并生成所需要的信息
 
+        // 新的临时变量接在中间代码已用的编号之后, 以免与之重名
+        for (Instruction instruction : originInstructions) {
+            if (instruction.getKind() != InstructionKind.RET && instruction.getResult().isTemp()) {
+                tempCount = Math.max(tempCount, instruction.getResult().getTempIndex() + 1);
+            }
+        }
+
         for (Instruction instruction : originInstructions) {
             switch (instruction.getKind()) {
                 case MOV -> {
@@ -78,7 +88,7 @@ public class AssemblyGenerator {
 
                         if (instruction.getKind() == InstructionKind.MUL) {
                             // 乘法, 添加MOV指令
-                            IRVariable temp = IRVariable.temp();
+                            IRVariable temp = IRVariable.temp(tempCount++);
                             irList.add(Instruction.createMov(temp, rhs));
                             irList.add(Instruction.createMul(instruction.getResult(), lhs, temp));
                         } else if (instruction.getKind() == InstructionKind.ADD || instruction.getKind() == InstructionKind.SUB) {
@@ -97,13 +107,13 @@ public class AssemblyGenerator {
                             }
                             case SUB -> {
                                 // 先用一个变量temp保存LHS
-                                IRVariable temp = IRVariable.temp();
+                                IRVariable temp = IRVariable.temp(tempCount++);
                                 irList.add(Instruction.createMov(temp, lhs));
                                 irList.add(Instruction.createSub(instruction.getResult(), temp, rhs));
                             }
                             case MUL -> {
                                 // 乘法, 添加MOV指令
-                                IRVariable temp = IRVariable.temp();
+                                IRVariable temp = IRVariable.temp(tempCount++);
                                 irList.add(Instruction.createMov(temp, lhs));
                                 irList.add(Instruction.createMul(instruction.getResult(), temp, rhs));
                             }
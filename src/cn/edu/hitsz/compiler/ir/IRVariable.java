@@ -18,10 +18,13 @@ public class IRVariable implements IRValue {
     }
 
     /**
-     * @return 一个对应于源语言中的临时变量的新 IRVariable
+     * 临时变量的编号由调用者在一次编译之内分配, 以便多个编译过程可以同时进行而互不影响
+     *
+     * @param index 临时变量的编号
+     * @return 一个对应于源语言中的临时变量的 IRVariable
      */
-    public static IRVariable temp() {
-        return new IRVariable("$" + count++);
+    public static IRVariable temp(int index) {
+        return new IRVariable("$" + index);
     }
 
     public String getName() {
@@ -36,6 +39,17 @@ public class IRVariable implements IRValue {
         return !isTemp();
     }
 
+    /**
+     * @return 临时变量的编号
+     */
+    public int getTempIndex() {
+        if (!isTemp()) {
+            throw new RuntimeException("Not a temporary variable: " + name);
+        }
+
+        return Integer.parseInt(name, 1, name.length(), 10);
+    }
+
     @Override
     public String toString() {
         return name;
@@ -56,5 +70,4 @@ public class IRVariable implements IRValue {
     }
 
     private final String name;
-    private static int count = 0;
 }
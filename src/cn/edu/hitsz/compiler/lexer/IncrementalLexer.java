@@ -0,0 +1,160 @@
+package cn.edu.hitsz.compiler.lexer;
+
+import cn.edu.hitsz.compiler.symtab.SymbolTable;
+
+/**
+ * 增量词法分析
+ * <br>
+ * 面向编辑器等需要反复分析同一份源代码的场景: 源代码保存在可编辑的 {@link StringBuilder} 中, 每次编辑后只重新识别编辑处所在的语句,
+ * 再把结果拼接回原有的 {@link TokenBuffer}. 与 {@link ParallelLexer} 同理, 分号之后自动机必然回到初态,
+ * 因此重新识别的区间从编辑处之前最近的分号之后开始, 到编辑处之后第一个未被改动的分号为止, 区间外的词法单元只需要平移位置.
+ * <br>
+ * 该类同时以引用计数维护符号表: 每个标识符的每次出现都计一次引用, 编辑使某个标识符不再出现时, 其条目会被移出符号表.
+ *
+ * @see SymbolTable#retain(String)
+ * @see SymbolTable#release(String)
+ */
+public class IncrementalLexer {
+    /**
+     * @param symbolTable 需要维护的符号表, 其条目应全部由该类加入
+     */
+    public IncrementalLexer(SymbolTable symbolTable) {
+        this.symbolTable = symbolTable;
+        this.idKind = TokenKind.fromString("id");
+        this.semicolonCode = TokenKind.fromString("Semicolon").getCode();
+    }
+
+    /**
+     * 加载源代码并完整地执行一次词法分析
+     *
+     * @param source 源代码, 会被复制一份
+     * @return 词法单元序列, 最后一个为 EOF. 它引用该类持有的源代码, 会随后续编辑原地更新
+     */
+    public TokenBuffer load(CharSequence source) {
+        if (tokens != null) {
+            releaseAll(tokens, 0, tokens.size());
+        }
+
+        text = new StringBuilder(source);
+        tokens = new TokenBuffer(text, idKind, TokenKind.fromString("IntConst"));
+        final var all = lex(text);
+        tokens.splice(0, 0, all, all.size(), 0, 0);
+        retainAll(tokens, 0, tokens.size());
+        lastEdit = new TokenEdit(0, 0, tokens.size());
+        return tokens;
+    }
+
+    /**
+     * 编辑源代码, 并只对受影响的语句重新执行词法分析
+     * <br>
+     * 若编辑后的源代码无法通过词法分析, 则抛出异常, 源代码, 词法单元与符号表都保持编辑前的状态.
+     *
+     * @param offset   编辑处在源代码中的偏移
+     * @param removed  删去的字符数
+     * @param inserted 插入的文本
+     * @return 更新后的词法单元序列, 与 {@link #load(CharSequence)} 返回的是同一个对象
+     */
+    public TokenBuffer edit(int offset, int removed, CharSequence inserted) {
+        if (tokens == null) {
+            throw new RuntimeException("Source code has not been loaded");
+        }
+        if (offset < 0 || removed < 0 || offset + removed > text.length()) {
+            throw new IndexOutOfBoundsException(
+                "Illegal edit [%d, %d) for length %d".formatted(offset, offset + removed, text.length())
+            );
+        }
+
+        // 受影响的词法单元从第一个终点不早于编辑处的词法单元开始 (紧挨着编辑处结束的词法单元可能与插入的文本连成一个),
+        // 向前扩展到上一个分号之后, 向后扩展到编辑处之后的第一个分号 (含) 为止
+        int from = tokens.searchEnd(offset);
+        while (from > 0 && tokens.getCode(from - 1) != semicolonCode) {
+            from--;
+        }
+        final int begin = from == 0 ? 0 : tokens.getStart(from - 1) + 1;
+
+        final int editEnd = offset + removed;
+        int to = from;
+        int end = text.length();
+        while (to < tokens.size()) {
+            final int code = tokens.getCode(to++);
+            if (code == semicolonCode && tokens.getStart(to - 1) >= editEnd) {
+                end = tokens.getStart(to - 1) + 1;
+                break;
+            }
+        }
+
+        // 先在区间的副本上完成分析, 出错时不会改动任何状态
+        final var region = new StringBuilder(end - begin - removed + inserted.length())
+            .append(text, begin, offset)
+            .append(inserted)
+            .append(text, editEnd, end)
+            .toString();
+        final var regionTokens = lex(region);
+        // 区间之后还有内容时, 去掉区间末尾的 EOF
+        final int count = to == tokens.size() ? regionTokens.size() : regionTokens.size() - 1;
+
+        // 先登记新的引用再撤销旧的, 以免仍被引用的条目被移出后又重新加入
+        retainAll(regionTokens, 0, count);
+        releaseAll(tokens, from, to);
+
+        text.replace(offset, editEnd, inserted.toString());
+        tokens.splice(from, to, regionTokens, count, begin, inserted.length() - removed);
+        lastEdit = new TokenEdit(from, to - from, count);
+        return tokens;
+    }
+
+    /**
+     * @return 当前的源代码
+     */
+    public CharSequence getSource() {
+        return text;
+    }
+
+    /**
+     * @return 上一次 {@link #load(CharSequence)} 或 {@link #edit(int, int, CharSequence)} 在词法单元序列上造成的改动,
+     * 可以交给 {@link cn.edu.hitsz.compiler.parser.IncrementalParser} 做增量语法分析
+     */
+    public TokenEdit getLastEdit() {
+        return lastEdit;
+    }
+
+    /**
+     * @return 当前的词法单元序列
+     */
+    public TokenBuffer getTokens() {
+        return tokens;
+    }
+
+    private TokenBuffer lex(CharSequence source) {
+        // 符号表由引用计数维护, 分析时使用一个临时的符号表
+        final var lexer = new LexicalAnalyzer(new SymbolTable());
+        lexer.loadSource(source);
+        return lexer.runIntoBuffer();
+    }
+
+    private void retainAll(TokenBuffer buffer, int from, int to) {
+        final int idCode = idKind.getCode();
+        for (int i = from; i < to; i++) {
+            if (buffer.getCode(i) == idCode) {
+                symbolTable.retain(buffer.getText(i));
+            }
+        }
+    }
+
+    private void releaseAll(TokenBuffer buffer, int from, int to) {
+        final int idCode = idKind.getCode();
+        for (int i = from; i < to; i++) {
+            if (buffer.getCode(i) == idCode) {
+                symbolTable.release(buffer.getText(i));
+            }
+        }
+    }
+
+    private final SymbolTable symbolTable;
+    private final TokenKind idKind;
+    private final int semicolonCode;
+
+    private StringBuilder text;
+    private TokenBuffer tokens;
+    private TokenEdit lastEdit;
+}
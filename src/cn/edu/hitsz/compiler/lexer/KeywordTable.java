@@ -0,0 +1,172 @@
+package cn.edu.hitsz.compiler.lexer;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+
+/**
+ * 关键字识别表
+ * <br>
+ * 关键字在词法上与标识符相同, 只能在识别出标识符之后再按文本区分. 该表直接在词法分析器的字符窗口上查询,
+ * 不截取子串, 也不产生任何分配: 先按长度范围排除, 再以 (长度, 首字符, 末字符) 散列到一个槽, 最后逐字符比较一次.
+ * <br>
+ * 散列的乘数在构造时搜索得到, 使每个关键字都独占一个槽 (即完美散列), 因此查询最多只比较一个候选.
+ * 若找不到这样的乘数 (例如两个关键字的长度, 首字符与末字符都相同), 则退化为线性探测, 结果依然正确.
+ * <br>
+ * 关键字集合由码点文件决定, 见 {@link #fromTokenKinds(Collection, Collection)}, 增加关键字时无需修改词法分析器.
+ */
+public final class KeywordTable {
+    /**
+     * 从词法单元类型中生成关键字表: 标识符形如自动机中的标识符 ({@code letter (letter | digit)*}) 的类型即为关键字
+     *
+     * @param kinds    所有词法单元类型, 一般为 {@link TokenKind#allAllowedTokenKinds()} 的值
+     * @param excluded 不作为关键字的类型, 如 id, IntConst 以及由标点直接识别出的类型 (Semicolon)
+     * @return 关键字表
+     */
+    public static KeywordTable fromTokenKinds(Collection<TokenKind> kinds, Collection<TokenKind> excluded) {
+        final var keywords = new ArrayList<TokenKind>();
+        for (final var kind : kinds) {
+            if (!excluded.contains(kind) && isIdentifierLike(kind.getIdentifier())) {
+                keywords.add(kind);
+            }
+        }
+
+        // 按码点排序, 使构造结果与 Map 的遍历顺序无关
+        keywords.sort((a, b) -> Integer.compare(a.getCode(), b.getCode()));
+        return new KeywordTable(keywords);
+    }
+
+    /**
+     * 查询字符区间 {@code chars[begin, end)} 是否为关键字
+     *
+     * @param chars 字符数组
+     * @param begin 起点
+     * @param end   终点 (不含)
+     * @return 关键字对应的简单词法单元, 不是关键字时为 null
+     */
+    public Token lookup(char[] chars, int begin, int end) {
+        final int length = end - begin;
+        if (length < minLength || length > maxLength) {
+            return null;
+        }
+
+        final int mask = slots.length - 1;
+        for (int slot = slotOf(multiplier, length, chars[begin], chars[end - 1]); ; slot = (slot + 1) & mask) {
+            final var keyword = slots[slot];
+            if (keyword == null) {
+                return null;
+            }
+            if (matches(keyword, chars, begin, length)) {
+                return tokens[slot];
+            }
+        }
+    }
+
+    /**
+     * @return 关键字的个数
+     */
+    public int size() {
+        return size;
+    }
+
+    private KeywordTable(List<TokenKind> keywords) {
+        this.size = keywords.size();
+
+        // 槽数为不小于关键字数两倍的 2 的幂, 至少为 2, 保证总有空槽以终止探测
+        int capacity = 2;
+        while (capacity < size * 2) {
+            capacity <<= 1;
+        }
+        this.shift = Integer.SIZE - Integer.numberOfTrailingZeros(capacity);
+
+        int min = Integer.MAX_VALUE;
+        int max = 0;
+        for (final var kind : keywords) {
+            final int length = kind.getIdentifier().length();
+            min = Math.min(min, length);
+            max = Math.max(max, length);
+        }
+        this.minLength = min;
+        this.maxLength = max;
+
+        // 搜索一个使所有关键字互不冲突的乘数; 找不到时使用冲突最少的那个
+        int bestMultiplier = GOLDEN;
+        int bestCollisions = Integer.MAX_VALUE;
+        for (int attempt = 0; attempt < MAX_ATTEMPTS && bestCollisions > 0; attempt++) {
+            final int candidate = GOLDEN + 2 * attempt;
+            final var used = new boolean[capacity];
+            int collisions = 0;
+            for (final var kind : keywords) {
+                final var text = kind.getIdentifier();
+                final int slot = slotOf(candidate, text.length(), text.charAt(0), text.charAt(text.length() - 1));
+                if (used[slot]) {
+                    collisions++;
+                }
+                used[slot] = true;
+            }
+            if (collisions < bestCollisions) {
+                bestCollisions = collisions;
+                bestMultiplier = candidate;
+            }
+        }
+        this.multiplier = bestMultiplier;
+
+        this.slots = new char[capacity][];
+        this.tokens = new Token[capacity];
+        final int mask = capacity - 1;
+        for (final var kind : keywords) {
+            final var text = kind.getIdentifier();
+            int slot = slotOf(multiplier, text.length(), text.charAt(0), text.charAt(text.length() - 1));
+            while (slots[slot] != null) {
+                slot = (slot + 1) & mask;
+            }
+            slots[slot] = text.toCharArray();
+            tokens[slot] = Token.simple(kind.getIdentifier());
+        }
+    }
+
+    private int slotOf(int multiplier, int length, char first, char last) {
+        final int key = (length << 16 | first) * 31 + last;
+        return (key * multiplier) >>> shift;
+    }
+
+    private static boolean matches(char[] keyword, char[] chars, int begin, int length) {
+        if (keyword.length != length) {
+            return false;
+        }
+        for (int i = 0; i < length; i++) {
+            if (keyword[i] != chars[begin + i]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static boolean isIdentifierLike(String text) {
+        if (text.isEmpty() || LexerDFA.classOf(text.charAt(0)) != LexerDFA.LETTER) {
+            return false;
+        }
+        for (int i = 1; i < text.length(); i++) {
+            final int cls = LexerDFA.classOf(text.charAt(i));
+            if (cls != LexerDFA.LETTER && cls != LexerDFA.DIGIT) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static final int GOLDEN = 0x9E3779B9;
+    private static final int MAX_ATTEMPTS = 1 << 12;
+
+    private final int size;
+    private final int minLength;
+    private final int maxLength;
+    private final int shift;
+    private final int multiplier;
+
+    /**
+     * 散列槽, 存放关键字的字符与对应的词法单元, 空槽处为 null
+     */
+    private final char[][] slots;
+    private final Token[] tokens;
+}
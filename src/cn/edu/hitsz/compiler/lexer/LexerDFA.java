@@ -0,0 +1,187 @@
+package cn.edu.hitsz.compiler.lexer;
+
+import java.util.Arrays;
+
+/**
+ * 词法分析所用的确定有限自动机 (DFA) 的表驱动形式
+ * <br>
+ * 状态编号沿用实验指导书中状态转换图的编号: 0 为初态, 14/16 分别为标识符与整常数的中间状态, 18/21 为 {@code *} 与 {@code =}
+ * 的中间状态, 其余均为终态. 带 * 号的终态 (15, 17, 20, 23) 是读到 "其它字符" 后才确定的, 识别时需要回退一个字符.
+ * <br>
+ * 为了避免在每个字符上做 {@code switch} 分支与装箱的集合查找, 我们预先把字符映射到字符类 ({@link #classOf(char)}),
+ * 并把转移函数展开为一张稠密的 {@code int[状态][字符类]} 表, 终态与回退信息也用 {@code boolean[]} 按状态下标存放.
+ * <br>
+ * 初态下的空白, 以及标识符与整常数的中间状态都有指向自身的转移, 源代码中的长串空白, 长标识符与长常数都停留在这些状态上.
+ * {@link #selfLoops()} 给出每个状态上这类自环的字符类集合, 词法分析器据此在一个紧凑的循环中一次跳过整段, 而不必逐字符查转移表.
+ */
+public final class LexerDFA {
+    //============================== 字符类 ==============================
+    public static final int BLANK = 0;
+    public static final int LETTER = 1;
+    public static final int DIGIT = 2;
+    public static final int STAR = 3;
+    public static final int EQUAL = 4;
+    public static final int PLUS = 5;
+    public static final int MINUS = 6;
+    public static final int COMMA = 7;
+    public static final int LEFT_PAREN = 8;
+    public static final int RIGHT_PAREN = 9;
+    public static final int SLASH = 10;
+    public static final int SEMICOLON = 11;
+    public static final int OTHER = 12;
+    /**
+     * 输入结束. 它不对应任何字符, 只用于让停在中间状态的词法单元在文件末尾也能被识别出来
+     */
+    public static final int EOF = 13;
+    public static final int CLASS_COUNT = 14;
+
+    /**
+     * 错误状态, 转移到该状态意味着遇到了非法字符
+     */
+    public static final int ERROR = -1;
+
+    public static final int STATE_COUNT = 33;
+
+    /**
+     * @return 共享的自动机实例, 它是不可变的
+     */
+    public static LexerDFA getInstance() {
+        return instance;
+    }
+
+    /**
+     * @param ch 字符
+     * @return 该字符所属的字符类
+     */
+    public static int classOf(char ch) {
+        return CHAR_CLASS[ch];
+    }
+
+    /**
+     * @return 稠密转移表, 下标为 {@code [状态][字符类]}, 值为下一状态或 {@link #ERROR}. 调用者不应修改它
+     */
+    public int[][] transitions() {
+        return transitions;
+    }
+
+    /**
+     * @return 终态位图, 下标为状态. 调用者不应修改它
+     */
+    public boolean[] accepting() {
+        return accepting;
+    }
+
+    /**
+     * @return 需要回退一个字符的终态位图, 下标为状态. 调用者不应修改它
+     */
+    public boolean[] retracting() {
+        return retracting;
+    }
+
+    /**
+     * @return 自环位图, 下标为状态, 值的第 c 位表示该状态在字符类 c 上转移到自身. 调用者不应修改它
+     */
+    public int[] selfLoops() {
+        return selfLoops;
+    }
+
+    //============================== 自动机的构造 ==============================
+    private static final byte[] CHAR_CLASS = new byte[Character.MAX_VALUE + 1];
+
+    static {
+        for (int ch = 0; ch <= Character.MAX_VALUE; ch++) {
+            final int cls;
+            if (Character.isLetter(ch)) {
+                cls = LETTER;
+            } else if (Character.isDigit(ch)) {
+                cls = DIGIT;
+            } else {
+                cls = OTHER;
+            }
+            CHAR_CLASS[ch] = (byte) cls;
+        }
+
+        CHAR_CLASS[' '] = BLANK;
+        CHAR_CLASS['\t'] = BLANK;
+        CHAR_CLASS['\n'] = BLANK;
+        // 源代码以流的方式读入, 不再经过按行切分, 因此 CRLF 中的 \r 也需要被当作空白
+        CHAR_CLASS['\r'] = BLANK;
+        CHAR_CLASS['*'] = STAR;
+        CHAR_CLASS['='] = EQUAL;
+        CHAR_CLASS['+'] = PLUS;
+        CHAR_CLASS['-'] = MINUS;
+        CHAR_CLASS[','] = COMMA;
+        CHAR_CLASS['('] = LEFT_PAREN;
+        CHAR_CLASS[')'] = RIGHT_PAREN;
+        CHAR_CLASS['/'] = SLASH;
+        CHAR_CLASS[';'] = SEMICOLON;
+    }
+
+    private static final LexerDFA instance = new LexerDFA();
+
+    private final int[][] transitions = new int[STATE_COUNT][CLASS_COUNT];
+    private final boolean[] accepting = new boolean[STATE_COUNT];
+    private final boolean[] retracting = new boolean[STATE_COUNT];
+    private final int[] selfLoops = new int[STATE_COUNT];
+
+    private LexerDFA() {
+        for (final var row : transitions) {
+            Arrays.fill(row, ERROR);
+        }
+
+        // 初态: 跳过空白, 按首字符分派
+        transitions[0][BLANK] = 0;
+        transitions[0][LETTER] = 14;
+        transitions[0][DIGIT] = 16;
+        transitions[0][STAR] = 18;
+        transitions[0][EQUAL] = 21;
+        transitions[0][LEFT_PAREN] = 26;
+        transitions[0][RIGHT_PAREN] = 27;
+        transitions[0][SEMICOLON] = 28;
+        transitions[0][PLUS] = 29;
+        transitions[0][MINUS] = 30;
+        transitions[0][SLASH] = 31;
+        transitions[0][COMMA] = 32;
+
+        // 标识符: letter (letter | digit)*
+        fillOther(14, 15);
+        transitions[14][LETTER] = 14;
+        transitions[14][DIGIT] = 14;
+
+        // 整常数: digit digit*
+        fillOther(16, 17);
+        transitions[16][DIGIT] = 16;
+
+        // * 与 ** (后者不在码点文件中, 状态 19 没有出边, 即视为错误)
+        fillOther(18, 20);
+        transitions[18][STAR] = 19;
+
+        // = 与 == (同上, 状态 22 没有出边)
+        fillOther(21, 23);
+        transitions[21][EQUAL] = 22;
+
+        for (final int state : new int[]{15, 17, 20, 23}) {
+            accepting[state] = true;
+            retracting[state] = true;
+        }
+        for (int state = 26; state <= 32; state++) {
+            accepting[state] = true;
+        }
+
+        // 自环只统计真实的字符类, EOF 不对应任何字符
+        for (int state = 0; state < STATE_COUNT; state++) {
+            for (int cls = 0; cls < EOF; cls++) {
+                if (transitions[state][cls] == state) {
+                    selfLoops[state] |= 1 << cls;
+                }
+            }
+        }
+    }
+
+    /**
+     * 将某状态在 "其它字符" (包括输入结束) 上的转移都设为同一个目标
+     */
+    private void fillOther(int state, int target) {
+        Arrays.fill(transitions[state], target);
+    }
+}
@@ -1,9 +1,14 @@
 package cn.edu.hitsz.compiler.lexer;
 
 import cn.edu.hitsz.compiler.symtab.SymbolTable;
+import cn.edu.hitsz.compiler.symtab.TextPool;
 import cn.edu.hitsz.compiler.utils.FileUtils;
+import cn.edu.hitsz.compiler.utils.MappedFileReader;
 
+import java.io.Closeable;
+import java.io.Reader;
 import java.util.*;
+import java.util.function.Consumer;
 import java.util.stream.StreamSupport;
 
 /**
@@ -14,11 +19,34 @@ import java.util.stream.StreamSupport;
  * @see Token 词法单元的实现
  * @see TokenKind 词法单元类型的实现
  */
-public class LexicalAnalyzer {
+public class LexicalAnalyzer implements Closeable {
     private final SymbolTable symbolTable;
 
     public LexicalAnalyzer(SymbolTable symbolTable) {
         this.symbolTable = symbolTable;
+        this.textPool = symbolTable.getTextPool();
+
+        // 预先解析出各终态对应的词法单元类型, 避免在分析过程中按字符串查找类型
+        idKind = TokenKind.fromString("id");
+        intConstKind = TokenKind.fromString("IntConst");
+        tokenOfState[20] = Token.simple("*");
+        tokenOfState[23] = Token.simple("=");
+        tokenOfState[26] = Token.simple("(");
+        tokenOfState[27] = Token.simple(")");
+        tokenOfState[28] = Token.simple("Semicolon");
+        tokenOfState[29] = Token.simple("+");
+        tokenOfState[30] = Token.simple("-");
+        tokenOfState[31] = Token.simple("/");
+        tokenOfState[32] = Token.simple(",");
+
+        // 关键字由码点文件决定: 除标识符, 常数与标点以外, 形如标识符的类型都是关键字
+        final var excluded = new ArrayList<TokenKind>(List.of(idKind, intConstKind));
+        for (final var token : tokenOfState) {
+            if (token != null) {
+                excluded.add(token.getKind());
+            }
+        }
+        keywords = KeywordTable.fromTokenKinds(TokenKind.allAllowedTokenKinds().values(), excluded);
     }
 
     /**
@@ -30,150 +58,317 @@ public class LexicalAnalyzer {
         // TODO: 词法分析前的缓冲区实现
         // 可自由实现各类缓冲区
         // 或直接采用完整读入方法
-        sourceCode = FileUtils.readFile(path);
+        loadReader(FileUtils.openReader(path));
 
-        // System.out.println(sourceCode);
         // throw new NotImplementedException();
     }
 
+    /**
+     * 以内存映射的方式加载源文件, 源文件必须只包含 ASCII 字符
+     *
+     * @param path 路径
+     * @see MappedFileReader
+     */
+    public void loadMappedFile(String path) {
+        loadReader(new MappedFileReader(path));
+    }
+
+    /**
+     * 以流的方式加载源代码. 词法分析时源代码经由定长的窗口 ({@link SourceBuffer}) 逐块读入,
+     * 而不会被完整地读进内存, 分析结束后字符流会被关闭
+     *
+     * @param reader 源代码字符流
+     */
+    public void loadReader(Reader reader) {
+        source = new SourceBuffer(reader);
+        sourceText = null;
+        pos = 0;
+        trackLines();
+    }
+
+    /**
+     * 加载已在内存中的源代码. 以这种方式加载后, 除了 {@link #run()} 与 {@link #tokenIterator()} 之外,
+     * 还可以使用 {@link #runIntoBuffer()} 得到引用该源代码的紧凑词法单元序列
+     *
+     * @param text 源代码
+     */
+    public void loadSource(CharSequence text) {
+        loadSource(text, 0, text.length());
+    }
+
+    /**
+     * 加载已在内存中的源代码中的一段区间, 词法单元的偏移仍相对于整个源代码计算
+     *
+     * @param text  源代码
+     * @param begin 区间起点
+     * @param end   区间终点 (不含)
+     * @see #loadSource(CharSequence)
+     */
+    public void loadSource(CharSequence text, int begin, int end) {
+        source = SourceBuffer.of(text, begin, end);
+        sourceText = text;
+        pos = 0;
+        trackLines();
+    }
+
+    private void trackLines() {
+        lineIndex = new LineIndex();
+        source.trackLines(lineIndex);
+    }
+
+    /**
+     * 获得源代码的行首索引, 它随着词法分析的进行逐步建立, 已识别出的词法单元的位置总能在其中查到.
+     * 只加载了源代码中的一段区间时, 该区间之前的行不会被计入
+     *
+     * @return 行首索引
+     */
+    public LineIndex getLineIndex() {
+        return lineIndex;
+    }
+
     /**
      * 执行词法分析, 准备好用于返回的 token 列表 <br>
      * 需要维护实验一所需的符号表条目, 而得在语法分析中才能确定的符号表条目的成员可以先设置为 null
      */
     public void run() {
         // TODO: 自动机实现的词法分析过程
-        int sLength = sourceCode.length();
-
-        for (int i = 0; i < sLength; i++) {
-            int currentState = 0;
-            int endPointer = i;
-
-            while (!tStates.contains(currentState) && endPointer < sLength) {
-                char ch = sourceCode.charAt(endPointer);
-                // System.out.println(ch);
-
-                boolean isBlank = blankList.contains(ch);
-                boolean isLetter = Character.isLetter(ch);
-                boolean isDigit = Character.isDigit(ch);
-                boolean isSemicolon = ch == ';';
-
-                // 确定下一个状态
-                int nextState = switch (currentState) {
-                    case 0-> switch (ch) {
-                        case '*' -> 18;
-                        case '=' -> 21;
-                        case '+' -> 29;
-                        case '-' -> 30;
-                        case ',' -> 32;
-                        case '(' -> 26;
-                        case ')' -> 27;
-                        case '/' -> 31;
-                        case ';' -> 28;
-                        default -> {
-                            if (isBlank) {
-                                yield 0;
-                            } else if (isLetter) {
-                               yield 14;
-                            } else if (isDigit) {
-                                yield 16;
-                            } else {
-                                throw new RuntimeException("Illegal Identifier");
-                            }
-                        }
-                    };
-                    case 14 -> {
-                        if (isLetter || isDigit) {
-                            yield 14;
-                        } else {
-                            yield 15;
-                        }
-                    }
-                    case 16 -> {
-                        if (isDigit) {
-                            yield 16;
-                        } else {
-                            yield 17;
-                        }
-                    }
-                    case 18 -> {
-                        if (ch == '*') {
-                            yield 19;
-                        } else {
-                            yield 20;
-                        }
-                    }
-                    case 21 -> {
-                        if (ch == '=') {
-                            yield 22;
-                        } else {
-                            yield 23;
-                        }
-                    }
-                    default -> {
-                        if (tStates.contains(currentState)) {
-                            yield 0;
-                        } else {
-                            throw new RuntimeException("Illegal Identifier");
-                        }
-                    }
-                };
-
-                if (tStates.contains(nextState)) {
-                    tokens.add(switch (nextState){
-                        case 15 -> {
-                            if ("int".equals(sourceCode.substring(i, endPointer))) {
-                                yield Token.simple("int");
-                            } else if ("return".equals(sourceCode.substring(i, endPointer))) {
-                                yield Token.simple("return");
-                            } else {
-                                if (!symbolTable.has(sourceCode.substring(i, endPointer))) {
-                                    symbolTable.add(sourceCode.substring(i, endPointer));
-                                }
-                                yield Token.normal("id", sourceCode.substring(i, endPointer));
-                            }
-                        }
-                        case 17 -> Token.normal("IntConst", sourceCode.substring(i, endPointer));
-                        case 20 -> Token.simple("*");
-                        case 23 -> Token.simple("=");
-                        case 26 -> Token.simple("(");
-                        case 27 -> Token.simple(")");
-                        case 28 -> Token.simple("Semicolon");
-                        case 29 -> Token.simple("+");
-                        case 30 -> Token.simple("-");
-                        case 31 -> Token.simple("/");
-                        case 32 -> Token.simple(",");
-                        default -> throw new IllegalStateException("Unexpected value: " + nextState);
-                    });
+        Token token;
+        do {
+            token = nextToken();
+            tokens.add(token);
+        } while (token.getKind() != TokenKind.eof());
+        // throw new NotImplementedException();
+    }
+
+    /**
+     * 执行词法分析, 把结果存入以源代码偏移表示文本的紧凑词法单元序列中, 不会保存 {@link Token} 对象.
+     * 仅能在 {@link #loadSource(CharSequence)} 之后调用, 与 {@link #run()} 二者只能择一使用. 符号表的维护与 run 一致.
+     *
+     * @return 词法单元序列, 最后一个为 EOF
+     */
+    public TokenBuffer runIntoBuffer() {
+        if (sourceText == null) {
+            throw new RuntimeException("Token buffer requires source code loaded by loadSource");
+        }
+
+        final var buffer = new TokenBuffer(sourceText, idKind, intConstKind);
+        Token token;
+        do {
+            token = nextToken();
+            buffer.add(token.getKind(), Math.toIntExact(lastStart), lastLength);
+        } while (token.getKind() != TokenKind.eof());
+
+        return buffer;
+    }
+
+    /**
+     * 获得一个按需进行词法分析的迭代器. 迭代器只会预读一个词法单元, 不会保存已经识别出的词法单元,
+     * 因而可以让语法分析与词法分析交叠进行. 迭代器的最后一个元素为 EOF.
+     * 迭代器同时给出每个词法单元的偏移 (见 {@link TokenIterator}), 供报告错误位置使用.
+     * <br>
+     * 该迭代器与 {@link #run()} 共享同一个输入, 二者只能择一使用; 若需要输出词法单元, 请使用 {@link #addTokenObserver(Consumer)}
+     *
+     * @return 词法单元迭代器
+     */
+    public TokenIterator tokenIterator() {
+        return new TokenIterator() {
+            @Override
+            public boolean hasNext() {
+                if (lookahead == null && !finished) {
+                    lookahead = nextToken();
+                    lookaheadOffset = lastStart;
                 }
+                return lookahead != null;
+            }
 
-                // 处理无意义字符
-                switch (currentState) {
-                    case 0 -> {
-                        if (isBlank) {
-                            i += 1;
-                        }
-                    }
-                    case 14, 16 -> {
-                        if (isSemicolon) {
-                            tokens.add(Token.simple("Semicolon"));
-                        }
+            @Override
+            public Token next() {
+                if (!hasNext()) {
+                    throw new NoSuchElementException();
+                }
+
+                final var token = lookahead;
+                lookahead = null;
+                offset = lookaheadOffset;
+                finished = token.getKind() == TokenKind.eof();
+                return token;
+            }
+
+            @Override
+            public long getOffset() {
+                return offset;
+            }
+
+            @Override
+            public LineIndex getLineIndex() {
+                return lineIndex;
+            }
+
+            private Token lookahead = null;
+            private long lookaheadOffset = -1;
+            private long offset = -1;
+            private boolean finished = false;
+        };
+    }
+
+    /**
+     * 注册词法单元观察者, 每识别出一个词法单元 (包括 EOF) 都会按识别顺序通知它
+     *
+     * @param observer 观察者
+     * @see TokenDumper 将词法单元逐个输出到文件的观察者
+     */
+    public void addTokenObserver(Consumer<Token> observer) {
+        tokenObservers.add(observer);
+    }
+
+    /**
+     * 从当前位置开始识别下一个词法单元, 输入结束后返回 EOF
+     *
+     * @return 识别出的词法单元
+     */
+    private Token nextToken() {
+        final var dfa = LexerDFA.getInstance();
+        final int[][] transitions = dfa.transitions();
+        final boolean[] accepting = dfa.accepting();
+        final boolean[] retracting = dfa.retracting();
+        final int[] selfLoops = dfa.selfLoops();
+
+        // 窗口及其有效长度, 每次 refill 之后需要重新获取
+        char[] chars = source.chars();
+        int limit = source.limit();
+        // 当前词法单元在窗口中的起点, 当前读到的位置, 以及自动机的当前状态
+        int begin = this.pos;
+        int pos = this.pos;
+        int state = 0;
+
+        while (true) {
+            final int charClass;
+            if (pos < limit) {
+                charClass = LexerDFA.classOf(chars[pos]);
+            } else {
+                // 窗口用尽, 保留未识别完的词素并读入后续内容.
+                // 即使已经读到末尾, refill 也可能挪动过窗口内容, 因此总是按绝对偏移重新定位
+                final long absoluteBegin = source.offset() + begin;
+                final long absolutePos = source.offset() + pos;
+                final boolean hasMore = source.refill(begin);
+                begin = (int) (absoluteBegin - source.offset());
+                pos = (int) (absolutePos - source.offset());
+                chars = source.chars();
+                limit = source.limit();
+
+                if (hasMore) {
+                    continue;
+                } else if (state == 0) {
+                    break;
+                }
+                // 读到末尾时以 EOF 字符类驱动自动机, 使停在中间状态的词法单元也能被识别
+                charClass = LexerDFA.EOF;
+            }
+
+            final int nextState = transitions[state][charClass];
+
+            if (nextState == LexerDFA.ERROR) {
+                throw new RuntimeException("Illegal Identifier");
+            }
+
+            if (accepting[nextState]) {
+                // 带 * 的终态是由其后的字符确定的, 该字符不属于当前词法单元, 需要回退
+                if (!retracting[nextState]) {
+                    pos++;
+                }
+                this.pos = pos;
+                lastStart = source.offset() + begin;
+                lastLength = pos - begin;
+                return notifyObservers(makeToken(nextState, chars, begin, pos));
+            } else {
+                pos++;
+                state = nextState;
+
+                // 快速路径: 在有自环的状态 (空白, 标识符, 整常数) 上直接跳过整段同类字符, 不再逐字符查转移表.
+                // 跳到窗口末尾时照常回到循环开头 refill
+                final int loop = selfLoops[state];
+                if (loop != 0) {
+                    while (pos < limit && (loop >>> LexerDFA.classOf(chars[pos]) & 1) != 0) {
+                        pos++;
                     }
-                    default -> {}
                 }
 
-                // System.out.println("现在的下标是"+ endPointer +", 现在读到的字符是" + ch + ", 当前状态是" + currentState + ", 下一个状态是" + nextState);
-                endPointer += 1;
-                currentState = nextState;
+                if (state == 0) {
+                    // 在初态下跳过无意义字符
+                    begin = pos;
+                }
             }
+        }
+
+        this.pos = pos;
+        lastStart = source.offset() + pos;
+        lastLength = 0;
+        source.close();
+        return notifyObservers(Token.eof());
+    }
 
-            i = endPointer - 1;
-            // System.out.println("现在的下标是"+ i);
+    private Token notifyObservers(Token token) {
+        for (final var observer : tokenObservers) {
+            observer.accept(token);
         }
+        return token;
+    }
 
-        tokens.add(Token.eof());
-        // throw new NotImplementedException();
+    /**
+     * 根据到达的终态构造词法单元, 需要时维护符号表
+     * <br>
+     * 标点使用预先解析好的享元; 关键字直接在窗口上查关键字表; 标识符与常数的文本经由驻留池查询,
+     * 每个不同的文本只会构造一次词法单元, 之后再次出现时直接复用, 不产生任何分配.
+     *
+     * @param acceptState 到达的终态
+     * @param chars       当前窗口
+     * @param begin       词素在窗口中的起点
+     * @param end         词素在窗口中的终点 (不含)
+     * @return 词法单元
+     */
+    private Token makeToken(int acceptState, char[] chars, int begin, int end) {
+        if (acceptState != 15 && acceptState != 17) {
+            final var token = tokenOfState[acceptState];
+            if (token == null) {
+                throw new IllegalStateException("Unexpected value: " + acceptState);
+            }
+            return token;
+        }
+
+        if (acceptState == 15) {
+            final var keyword = keywords.lookup(chars, begin, end);
+            if (keyword != null) {
+                return keyword;
+            }
+        }
+
+        final int textId = textPool.intern(chars, begin, end);
+        if (textId < tokenOfText.length && tokenOfText[textId] != null) {
+            // 已经出现过的标识符与常数
+            return tokenOfText[textId];
+        }
+
+        final var text = textPool.get(textId);
+        final Token token;
+        if (acceptState == 15) {
+            if (!symbolTable.has(text)) {
+                symbolTable.add(text);
+            }
+            token = Token.normal(idKind, text);
+        } else {
+            token = Token.normal(intConstKind, text);
+        }
+
+        cacheToken(textId, token);
+        return token;
     }
 
+    private void cacheToken(int textId, Token token) {
+        if (textId >= tokenOfText.length) {
+            tokenOfText = Arrays.copyOf(tokenOfText, Math.max(textId + 1, tokenOfText.length * 2));
+        }
+        tokenOfText[textId] = token;
+    }
 
     /**
      * 获得词法分析的结果, 保证在调用了 run 方法之后调用
@@ -190,6 +385,16 @@ public class LexicalAnalyzer {
         // throw new NotImplementedException();
     }
 
+    /**
+     * 关闭源代码的输入. 读到 EOF 时会自动关闭, 分析在此之前因异常中止时应调用该方法; 可以重复调用
+     */
+    @Override
+    public void close() {
+        if (source != null) {
+            source.close();
+        }
+    }
+
     /**
      * 将词法分析的结果输出到文件
      *
@@ -203,23 +408,58 @@ public class LexicalAnalyzer {
     }
 
     /**
-     * 代表源代码的字符串
+     * 源代码的输入缓冲区
      */
-    private static String sourceCode;
+    private SourceBuffer source;
 
     /**
-     * 词法分析的结果
+     * 源代码的文本, 仅在以 {@link #loadSource(CharSequence)} 加载时存在
+     */
+    private CharSequence sourceText;
+
+    /**
+     * 下一个词法单元在输入缓冲区窗口中的起点
+     */
+    private int pos = 0;
+
+    /**
+     * 最近识别出的词法单元的词素在整个源代码中的起点与长度
+     */
+    private long lastStart = 0;
+    private int lastLength = 0;
+
+    private final List<Consumer<Token>> tokenObservers = new ArrayList<>();
+
+    /**
+     * 与符号表共享的词素文本驻留池
+     */
+    private final TextPool textPool;
+
+    /**
+     * 以驻留文本编号为下标的词法单元缓存
+     */
+    private Token[] tokenOfText = new Token[64];
+
+    /**
+     * 关键字表
      */
-    private static List<Token> tokens = new ArrayList<>();
+    private final KeywordTable keywords;
 
     /**
-     * 存放无意义字符的列表(集合)
+     * 源代码的行首索引
      */
-    private static final List<Character> blankList = Arrays.asList(' ', '\t', '\n');
+    private LineIndex lineIndex = null;
 
     /**
-     * 存放终态的列表(集合)
+     * 以终态为下标的标点词法单元, 非标点终态处为 null
+     */
+    private final Token[] tokenOfState = new Token[LexerDFA.STATE_COUNT];
+    private final TokenKind idKind;
+    private final TokenKind intConstKind;
+
+    /**
+     * 词法分析的结果
      */
-    private static final Set<Integer> tStates = new HashSet<>(Arrays.asList(15, 17, 20, 23, 26, 27, 28, 29, 30, 31, 32));
+    private final List<Token> tokens = new ArrayList<>();
 
 }
\ No newline at end of file
@@ -0,0 +1,101 @@
+package cn.edu.hitsz.compiler.lexer;
+
+import java.util.Arrays;
+
+/**
+ * 源代码的行首索引, 用于把偏移换算为行号与列号
+ * <br>
+ * 词法单元本身不保存位置 (标点与重复出现的标识符都是共享的享元), 各处只传递它在源代码中的偏移.
+ * 该索引在读入源代码时顺带建立 (见 {@link SourceBuffer}), 只保存每行行首的偏移; 只有真正需要报告位置时才按偏移二分查找出行号与列号.
+ * <br>
+ * 行号与列号都从 1 开始, 列号按字符计算.
+ */
+public final class LineIndex {
+    /**
+     * 扫描整个源代码建立行首索引
+     *
+     * @param text 源代码
+     * @return 行首索引
+     */
+    public static LineIndex of(CharSequence text) {
+        final var index = new LineIndex();
+        for (int i = 0; i < text.length(); i++) {
+            if (text.charAt(i) == '\n') {
+                index.addLineStart(i + 1);
+            }
+        }
+        return index;
+    }
+
+    /**
+     * @param offset 源代码中的偏移
+     * @return 该偏移所在的行号
+     */
+    public int lineOf(long offset) {
+        // 找到最后一个不大于 offset 的行首
+        int low = 0;
+        int high = count - 1;
+        while (low < high) {
+            final int mid = (low + high + 1) >>> 1;
+            if (lineStarts[mid] <= offset) {
+                low = mid;
+            } else {
+                high = mid - 1;
+            }
+        }
+        return low + 1;
+    }
+
+    /**
+     * @param offset 源代码中的偏移
+     * @return 该偏移所在的列号
+     */
+    public int columnOf(long offset) {
+        return (int) (offset - lineStarts[lineOf(offset) - 1]) + 1;
+    }
+
+    /**
+     * @param offset 源代码中的偏移
+     * @return 形如 "line 3, column 7" 的位置描述
+     */
+    public String format(long offset) {
+        final int line = lineOf(offset);
+        return "line %d, column %d".formatted(line, (int) (offset - lineStarts[line - 1]) + 1);
+    }
+
+    /**
+     * @return 目前已知的行数
+     */
+    public int getLineCount() {
+        return count;
+    }
+
+    /**
+     * 扫描新读入的一段字符, 记录其中的换行
+     *
+     * @param chars 字符数组
+     * @param from  新字符在数组中的起点
+     * @param to    新字符在数组中的终点 (不含)
+     * @param base  数组首字符在源代码中的偏移
+     */
+    void scan(char[] chars, int from, int to, long base) {
+        for (int i = from; i < to; i++) {
+            if (chars[i] == '\n') {
+                addLineStart(base + i + 1);
+            }
+        }
+    }
+
+    private void addLineStart(long offset) {
+        if (count == lineStarts.length) {
+            lineStarts = Arrays.copyOf(lineStarts, count * 2);
+        }
+        lineStarts[count++] = offset;
+    }
+
+    /**
+     * 各行行首的偏移, 第一行总是从 0 开始
+     */
+    private long[] lineStarts = new long[64];
+    private int count = 1;
+}
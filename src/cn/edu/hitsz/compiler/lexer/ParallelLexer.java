@@ -0,0 +1,103 @@
+package cn.edu.hitsz.compiler.lexer;
+
+import cn.edu.hitsz.compiler.symtab.SymbolTable;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+
+/**
+ * 并行词法分析
+ * <br>
+ * 源语言中没有嵌套的块, 字符串或注释, 分号之后自动机必然回到初态, 因此在分号之后切开源代码, 各段独立分析的结果拼接起来与整体分析完全一致.
+ * 该类把源代码按分号切成若干段, 在 {@link ForkJoinPool} 上并行地对各段做词法分析, 再按原顺序拼接成一个 {@link TokenBuffer}.
+ * <br>
+ * 每段使用自己的符号表, 分析完成后再按段的顺序依次合并到给定的符号表中. 这样符号表中条目的加入顺序与串行分析时一致 (即标识符首次出现的顺序),
+ * 与线程调度无关.
+ */
+public class ParallelLexer {
+    /**
+     * @param symbolTable 词法分析需要维护的符号表
+     * @param pool        执行分析任务的线程池
+     */
+    public ParallelLexer(SymbolTable symbolTable, ForkJoinPool pool) {
+        this.symbolTable = symbolTable;
+        this.pool = pool;
+    }
+
+    public ParallelLexer(SymbolTable symbolTable) {
+        this(symbolTable, ForkJoinPool.commonPool());
+    }
+
+    /**
+     * 对源代码执行并行词法分析
+     *
+     * @param source  源代码
+     * @param regions 希望切分成的段数, 实际段数可能因分号不足而更少
+     * @return 词法单元序列, 最后一个为 EOF
+     */
+    public TokenBuffer run(CharSequence source, int regions) {
+        final var bounds = split(source, regions);
+
+        final var tasks = new ArrayList<ForkJoinTask<Region>>();
+        for (int i = 0; i + 1 < bounds.size(); i++) {
+            final int begin = bounds.get(i);
+            final int end = bounds.get(i + 1);
+            tasks.add(pool.submit(() -> lexRegion(source, begin, end)));
+        }
+
+        // 按段的顺序拼接结果, 去掉除最后一段外各段末尾的 EOF
+        final var result = new TokenBuffer(source, TokenKind.fromString("id"), TokenKind.fromString("IntConst"));
+        for (int i = 0; i < tasks.size(); i++) {
+            final var region = tasks.get(i).join();
+            final var tokens = region.tokens();
+            final boolean isLast = i == tasks.size() - 1;
+            result.addAll(tokens, 0, isLast ? tokens.size() : tokens.size() - 1);
+            symbolTable.mergeFrom(region.symbolTable());
+        }
+
+        return result;
+    }
+
+    /**
+     * 在分号之后切分源代码
+     *
+     * @param source  源代码
+     * @param regions 希望切分成的段数
+     * @return 各段的边界, 首个为 0, 末个为源代码长度, 严格递增
+     */
+    private static List<Integer> split(CharSequence source, int regions) {
+        final int length = source.length();
+        final var bounds = new ArrayList<Integer>();
+        bounds.add(0);
+
+        for (int i = 1; i < regions; i++) {
+            // 从均分点开始向后找分号, 在它之后切开
+            int cut = Math.max((int) ((long) length * i / regions), bounds.get(bounds.size() - 1));
+            while (cut < length && source.charAt(cut) != ';') {
+                cut++;
+            }
+            if (cut >= length - 1) {
+                break;
+            }
+            bounds.add(cut + 1);
+        }
+
+        bounds.add(length);
+        return bounds;
+    }
+
+    private static Region lexRegion(CharSequence source, int begin, int end) {
+        final var table = new SymbolTable();
+        final var lexer = new LexicalAnalyzer(table);
+        lexer.loadSource(source, begin, end);
+        return new Region(lexer.runIntoBuffer(), table);
+    }
+
+    private record Region(TokenBuffer tokens, SymbolTable symbolTable) {
+    }
+
+    private final SymbolTable symbolTable;
+    private final ForkJoinPool pool;
+}
@@ -0,0 +1,188 @@
+package cn.edu.hitsz.compiler.lexer;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.Reader;
+
+/**
+ * 词法分析器的输入缓冲区
+ * <br>
+ * 缓冲区是一个定长的字符窗口, 按需从底层的 {@link Reader} 中读入源代码, 因此无论源文件多大, 它占用的内存都是固定的.
+ * 词法分析器在窗口中扫描; 窗口用尽时调用 {@link #refill(int)}, 把尚未识别完的词素挪到窗口开头再继续读入,
+ * 这样跨越两次读入的词法单元也能被正确识别. 只有当单个词素比整个窗口还长时窗口才会扩容.
+ */
+public final class SourceBuffer implements Closeable {
+    /**
+     * 默认的窗口大小 (字符数)
+     */
+    public static final int DEFAULT_CAPACITY = 1 << 16;
+
+    /**
+     * @param reader   源代码的字符流, 缓冲区读完后会负责关闭它
+     * @param capacity 窗口大小
+     */
+    public SourceBuffer(Reader reader, int capacity) {
+        if (capacity <= 0) {
+            throw new IllegalArgumentException("Capacity of source buffer must be positive");
+        }
+
+        this.reader = reader;
+        this.chars = new char[capacity];
+    }
+
+    public SourceBuffer(Reader reader) {
+        this(reader, DEFAULT_CAPACITY);
+    }
+
+    /**
+     * @param text 已在内存中的源代码
+     * @return 逐块读取该源代码的缓冲区
+     */
+    public static SourceBuffer of(CharSequence text) {
+        return of(text, 0, text.length());
+    }
+
+    /**
+     * @param text  已在内存中的源代码
+     * @param begin 需要读取的区间的起点
+     * @param end   需要读取的区间的终点 (不含)
+     * @return 逐块读取该源代码中一段区间的缓冲区, 其偏移 ({@link #offset()}) 仍相对于整个源代码计算
+     */
+    public static SourceBuffer of(CharSequence text, int begin, int end) {
+        // 区间较短时 (如增量分析中的一条语句) 不必分配默认大小的窗口
+        final int capacity = Math.max(1, Math.min(DEFAULT_CAPACITY, end - begin));
+        final var buffer = new SourceBuffer(new CharSequenceReader(text, begin, end), capacity);
+        buffer.offset = begin;
+        return buffer;
+    }
+
+    /**
+     * @return 窗口数组, 其中 {@code [0, limit())} 为有效内容. 每次 refill 后都需要重新获取
+     */
+    public char[] chars() {
+        return chars;
+    }
+
+    /**
+     * @return 窗口中有效字符的个数
+     */
+    public int limit() {
+        return limit;
+    }
+
+    /**
+     * @return 窗口首字符在整个源代码中的偏移
+     */
+    public long offset() {
+        return offset;
+    }
+
+    /**
+     * 在读入源代码的同时建立行首索引. 需要在第一次 refill 之前调用
+     *
+     * @param lineIndex 需要填充的行首索引
+     */
+    public void trackLines(LineIndex lineIndex) {
+        this.lineIndex = lineIndex;
+    }
+
+    /**
+     * 丢弃窗口中 {@code keepFrom} 之前的内容, 把剩余部分挪到窗口开头, 并从字符流中读入更多字符
+     *
+     * @param keepFrom 需要保留的第一个字符在窗口中的下标
+     * @return 是否读入了新的字符; 为 false 时说明输入已经结束
+     */
+    public boolean refill(int keepFrom) {
+        if (reader == null) {
+            return false;
+        }
+
+        final int kept = limit - keepFrom;
+        if (kept == chars.length) {
+            // 一个词素占满了整个窗口, 只能扩容
+            final var larger = new char[chars.length * 2];
+            System.arraycopy(chars, 0, larger, 0, kept);
+            chars = larger;
+        } else if (keepFrom > 0) {
+            System.arraycopy(chars, keepFrom, chars, 0, kept);
+        }
+        offset += keepFrom;
+        limit = kept;
+
+        try {
+            final int read = reader.read(chars, limit, chars.length - limit);
+            if (read < 0) {
+                close();
+                return false;
+            }
+
+            if (lineIndex != null) {
+                lineIndex.scan(chars, limit, limit + read, offset);
+            }
+            limit += read;
+            return true;
+        } catch (IOException e) {
+            throw new RuntimeException("IO Exception when reading source code", e);
+        }
+    }
+
+    @Override
+    public void close() {
+        if (reader == null) {
+            return;
+        }
+
+        try {
+            reader.close();
+        } catch (IOException e) {
+            throw new RuntimeException("IO Exception when closing source code", e);
+        } finally {
+            reader = null;
+        }
+    }
+
+    /**
+     * 读取 {@link CharSequence} 的字符流, 与 {@link java.io.StringReader} 类似, 但不要求源代码是 String (如增量分析中可编辑的 StringBuilder)
+     */
+    private static class CharSequenceReader extends Reader {
+        CharSequenceReader(CharSequence text, int begin, int end) {
+            this.text = text;
+            this.next = begin;
+            this.end = end;
+        }
+
+        @Override
+        public int read(char[] dst, int off, int len) {
+            if (next >= end) {
+                return -1;
+            }
+
+            final int count = Math.min(len, end - next);
+            if (text instanceof String string) {
+                string.getChars(next, next + count, dst, off);
+            } else if (text instanceof StringBuilder builder) {
+                builder.getChars(next, next + count, dst, off);
+            } else {
+                for (int i = 0; i < count; i++) {
+                    dst[off + i] = text.charAt(next + i);
+                }
+            }
+            next += count;
+            return count;
+        }
+
+        @Override
+        public void close() {
+        }
+
+        private final CharSequence text;
+        private final int end;
+        private int next;
+    }
+
+    private Reader reader;
+    private char[] chars;
+    private int limit = 0;
+    private long offset = 0;
+    private LineIndex lineIndex = null;
+}
@@ -10,6 +10,9 @@ package cn.edu.hitsz.compiler.lexer;
  * <br>
  * 为了方便与统一词法单元的构造, 我们将词法单元的构造函数设为了私有的, 通过公有静态函数进行构造,
  * 这将提升代码可读性并便于我们在构造时执行一定的检查
+ * <br>
+ * 词法单元是不可变的. 不带文本的简单词法单元 (标点/关键字/EOF) 对每个类型只有一个共享实例 (享元), 由 {@link TokenKind} 持有,
+ * 构造它们不会产生任何分配. 因此请不要依赖词法单元的引用相等性来区分源代码中不同位置的词法单元.
  *
  * @see TokenKind 词法单元的类型, 其具有一定的复杂结构
  */
@@ -18,7 +21,7 @@ public class Token {
      * @return 代表 EOF 的 token
      */
     public static Token eof() {
-        return new Token(TokenKind.eof(), "");
+        return TokenKind.eof().getSimpleToken();
     }
 
     /**
@@ -34,7 +37,7 @@ public class Token {
      * @return 具有该 token 类型的一简单 token (不带其它文本表示, 比如标点/关键字)
      */
     public static Token simple(TokenKind kind) {
-        return normal(kind, "");
+        return kind.getSimpleToken();
     }
 
     /**
@@ -51,6 +54,10 @@ public class Token {
      * @return 具有该 token 类型的一正常 token (带其它文本, 比如标识符/数字文本)
      */
     public static Token normal(TokenKind kind, String text) {
+        if (text.isEmpty()) {
+            return kind.getSimpleToken();
+        }
+
         return new Token(kind, text);
     }
 
@@ -80,6 +87,16 @@ public class Token {
         return "(%s,%s)".formatted(kind, text);
     }
 
+    /**
+     * 仅供 {@link TokenKind} 构造其享元实例使用
+     *
+     * @param kind token 类型
+     * @return 不带文本的新 token
+     */
+    static Token createSimple(TokenKind kind) {
+        return new Token(kind, "");
+    }
+
     private Token(TokenKind kind, String text) {
         this.kind = kind;
         this.text = text;
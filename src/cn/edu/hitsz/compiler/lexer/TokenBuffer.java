@@ -0,0 +1,259 @@
+package cn.edu.hitsz.compiler.lexer;
+
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+
+/**
+ * 以 "数组的结构" 形式紧凑存放的词法单元序列
+ * <br>
+ * 与 {@code List<Token>} 为每个词法单元保存一个对象不同, 该类用三个平行的 {@code int[]} 分别保存每个词法单元的类型码点
+ * ({@link TokenKind#getCode()}), 以及词素在源代码中的起点与长度, 每个词法单元只占 12 字节.
+ * 词法单元的文本并不另外保存, 需要时再从源代码中截取; {@link Token} 对象也只在 {@link #get(int)} 时才按需构造.
+ * <br>
+ * 偏移量使用 int 存放, 因此源代码长度不能超过 {@link Integer#MAX_VALUE} 个字符.
+ *
+ * @see LexicalAnalyzer#runIntoBuffer()
+ */
+public class TokenBuffer implements Iterable<Token> {
+    /**
+     * @param source     词法单元所引用的源代码
+     * @param textKinds  带有文本的词法单元类型 (如标识符与常数), 其余类型的词法单元构造出来都是不带文本的简单词法单元
+     */
+    public TokenBuffer(CharSequence source, TokenKind... textKinds) {
+        this.source = source;
+        for (final var kind : textKinds) {
+            this.textKinds.set(kind.getCode() + 1);
+        }
+    }
+
+    /**
+     * 在末尾追加一个词法单元
+     *
+     * @param kind   类型
+     * @param start  词素在源代码中的起点
+     * @param length 词素的长度
+     */
+    public void add(TokenKind kind, int start, int length) {
+        if (size == codes.length) {
+            final int capacity = size * 2;
+            codes = Arrays.copyOf(codes, capacity);
+            starts = Arrays.copyOf(starts, capacity);
+            lengths = Arrays.copyOf(lengths, capacity);
+        }
+
+        codes[size] = kind.getCode();
+        starts[size] = start;
+        lengths[size] = length;
+        size++;
+    }
+
+    /**
+     * 在末尾追加另一个序列中 {@code [from, to)} 范围内的词法单元
+     *
+     * @param other 另一个引用同一份源代码的序列
+     * @param from  范围起点
+     * @param to    范围终点 (不含)
+     */
+    public void addAll(TokenBuffer other, int from, int to) {
+        if (other.source != source) {
+            throw new RuntimeException("Can NOT concatenate token buffers of different source code");
+        }
+        if (from < 0 || to > other.size || from > to) {
+            throw new IndexOutOfBoundsException("Illegal range [%d, %d) for size %d".formatted(from, to, other.size));
+        }
+
+        final int count = to - from;
+        if (size + count > codes.length) {
+            final int capacity = Math.max(size + count, size * 2);
+            codes = Arrays.copyOf(codes, capacity);
+            starts = Arrays.copyOf(starts, capacity);
+            lengths = Arrays.copyOf(lengths, capacity);
+        }
+
+        System.arraycopy(other.codes, from, codes, size, count);
+        System.arraycopy(other.starts, from, starts, size, count);
+        System.arraycopy(other.lengths, from, lengths, size, count);
+        size += count;
+    }
+
+    /**
+     * 用另一个序列的前 {@code count} 个词法单元替换 {@code [from, to)} 范围内的词法单元, 并平移其后词法单元的起点
+     * <br>
+     * 用于增量词法分析: 源代码被编辑后, 只有编辑处附近的词法单元需要重新识别, 其后的词法单元只是整体移动了位置.
+     *
+     * @param from        被替换范围的起点
+     * @param to          被替换范围的终点 (不含)
+     * @param replacement 用于替换的词法单元, 可以引用另一份源代码
+     * @param count       替换进来的词法单元个数
+     * @param shift       替换进来的词法单元的起点需要加上的偏移
+     * @param tailShift   被替换范围之后的词法单元的起点需要加上的偏移
+     */
+    void splice(int from, int to, TokenBuffer replacement, int count, int shift, int tailShift) {
+        if (from < 0 || to > size || from > to) {
+            throw new IndexOutOfBoundsException("Illegal range [%d, %d) for size %d".formatted(from, to, size));
+        }
+        if (count < 0 || count > replacement.size) {
+            throw new IndexOutOfBoundsException("Illegal count %d for size %d".formatted(count, replacement.size));
+        }
+
+        final int tail = size - to;
+        final int newSize = from + count + tail;
+        if (newSize > codes.length) {
+            final int capacity = Math.max(newSize, size * 2);
+            codes = Arrays.copyOf(codes, capacity);
+            starts = Arrays.copyOf(starts, capacity);
+            lengths = Arrays.copyOf(lengths, capacity);
+        }
+
+        // 先挪动尾部, 再写入替换的内容
+        System.arraycopy(codes, to, codes, from + count, tail);
+        System.arraycopy(starts, to, starts, from + count, tail);
+        System.arraycopy(lengths, to, lengths, from + count, tail);
+        if (tailShift != 0) {
+            for (int i = from + count; i < newSize; i++) {
+                starts[i] += tailShift;
+            }
+        }
+
+        System.arraycopy(replacement.codes, 0, codes, from, count);
+        System.arraycopy(replacement.lengths, 0, lengths, from, count);
+        for (int i = 0; i < count; i++) {
+            starts[from + i] = replacement.starts[i] + shift;
+        }
+        size = newSize;
+    }
+
+    /**
+     * 二分查找第一个终点不小于给定偏移的词法单元, 即包含该偏移或紧挨在它之前结束的词法单元
+     *
+     * @param offset 源代码中的偏移
+     * @return 该词法单元的下标, 不存在时为 {@link #size()}
+     */
+    int searchEnd(int offset) {
+        int low = 0;
+        int high = size;
+        while (low < high) {
+            final int mid = (low + high) >>> 1;
+            if (starts[mid] + lengths[mid] < offset) {
+                low = mid + 1;
+            } else {
+                high = mid;
+            }
+        }
+        return low;
+    }
+
+    /**
+     * @return 词法单元的个数
+     */
+    public int size() {
+        return size;
+    }
+
+    /**
+     * @param index 词法单元的下标
+     * @return 该词法单元类型的码点
+     */
+    public int getCode(int index) {
+        checkIndex(index);
+        return codes[index];
+    }
+
+    /**
+     * @param index 词法单元的下标
+     * @return 该词法单元的类型
+     */
+    public TokenKind getKind(int index) {
+        return TokenKind.fromCode(getCode(index));
+    }
+
+    /**
+     * @param index 词法单元的下标
+     * @return 该词法单元的词素在源代码中的起点
+     */
+    public int getStart(int index) {
+        checkIndex(index);
+        return starts[index];
+    }
+
+    /**
+     * @param index 词法单元的下标
+     * @return 该词法单元的词素长度
+     */
+    public int getLength(int index) {
+        checkIndex(index);
+        return lengths[index];
+    }
+
+    /**
+     * @param index 词法单元的下标
+     * @return 该词法单元的文本, 与 {@link Token#getText()} 一致, 简单词法单元的文本为空字符串
+     */
+    public String getText(int index) {
+        checkIndex(index);
+        if (!textKinds.get(codes[index] + 1)) {
+            return "";
+        }
+
+        final int start = starts[index];
+        return source.subSequence(start, start + lengths[index]).toString();
+    }
+
+    /**
+     * 按需构造词法单元对象
+     *
+     * @param index 词法单元的下标
+     * @return 词法单元
+     */
+    public Token get(int index) {
+        return Token.normal(getKind(index), getText(index));
+    }
+
+    /**
+     * @return 引用的源代码
+     */
+    public CharSequence getSource() {
+        return source;
+    }
+
+    /**
+     * @return 依次构造各个词法单元的迭代器
+     */
+    @Override
+    public Iterator<Token> iterator() {
+        return new Iterator<>() {
+            @Override
+            public boolean hasNext() {
+                return next < size;
+            }
+
+            @Override
+            public Token next() {
+                if (!hasNext()) {
+                    throw new NoSuchElementException();
+                }
+                return get(next++);
+            }
+
+            private int next = 0;
+        };
+    }
+
+    private void checkIndex(int index) {
+        if (index < 0 || index >= size) {
+            throw new IndexOutOfBoundsException("Token index %d out of bounds for size %d".formatted(index, size));
+        }
+    }
+
+    private static final int INITIAL_CAPACITY = 1024;
+
+    private final CharSequence source;
+    private final BitSet textKinds = new BitSet();
+
+    private int[] codes = new int[INITIAL_CAPACITY];
+    private int[] starts = new int[INITIAL_CAPACITY];
+    private int[] lengths = new int[INITIAL_CAPACITY];
+    private int size = 0;
+}
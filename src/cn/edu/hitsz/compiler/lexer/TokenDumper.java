@@ -0,0 +1,58 @@
+package cn.edu.hitsz.compiler.lexer;
+
+import java.io.BufferedWriter;
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.util.function.Consumer;
+
+/**
+ * 将词法单元逐个输出到文件的观察者
+ * <br>
+ * 当词法分析以迭代器的形式按需进行时, 词法单元不会被保存下来, 也就无法在分析结束后统一调用
+ * {@link LexicalAnalyzer#dumpTokens(String)}. 此时可以把该类注册为词法分析器的观察者, 它会在每个词法单元被识别出来时立即写出,
+ * 输出格式与 {@code dumpTokens} 一致. 收到 EOF 后文件会被自动关闭.
+ *
+ * @see LexicalAnalyzer#addTokenObserver(Consumer)
+ */
+public class TokenDumper implements Consumer<Token>, Closeable {
+    /**
+     * @param path 输出文件的路径
+     */
+    public TokenDumper(String path) {
+        this.path = path;
+        try {
+            this.writer = Files.newBufferedWriter(Paths.get(path), StandardCharsets.UTF_8);
+        } catch (IOException e) {
+            throw new RuntimeException("IO Exception for " + path, e);
+        }
+    }
+
+    @Override
+    public void accept(Token token) {
+        try {
+            writer.write(token.toString());
+            writer.newLine();
+        } catch (IOException e) {
+            throw new RuntimeException("IO Exception for " + path, e);
+        }
+
+        if (token.getKind() == TokenKind.eof()) {
+            close();
+        }
+    }
+
+    @Override
+    public void close() {
+        try {
+            writer.close();
+        } catch (IOException e) {
+            throw new RuntimeException("IO Exception for " + path, e);
+        }
+    }
+
+    private final String path;
+    private final BufferedWriter writer;
+}
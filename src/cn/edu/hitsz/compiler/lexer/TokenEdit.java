@@ -0,0 +1,13 @@
+package cn.edu.hitsz.compiler.lexer;
+
+/**
+ * 一次编辑在词法单元序列上造成的改动: 原序列中从 {@code from} 开始的 {@code removed} 个词法单元被替换成了新序列中从 {@code from} 开始的
+ * {@code inserted} 个词法单元, 其余词法单元的类型与顺序不变
+ *
+ * @param from     改动范围的起点
+ * @param removed  原序列中被替换的词法单元个数
+ * @param inserted 新序列中替换进来的词法单元个数
+ * @see IncrementalLexer#getLastEdit()
+ */
+public record TokenEdit(int from, int removed, int inserted) {
+}
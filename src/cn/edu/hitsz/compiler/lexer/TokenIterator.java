@@ -0,0 +1,21 @@
+package cn.edu.hitsz.compiler.lexer;
+
+import java.util.Iterator;
+
+/**
+ * 能报告词法单元位置的词法单元迭代器
+ * <br>
+ * 位置不保存在 {@link Token} 中, 而是由迭代器给出最近一次返回的词法单元的偏移, 使用者需要时自行保存这个整数,
+ * 并在报告错误时经由 {@link #getLineIndex()} 换算为行号与列号.
+ */
+public interface TokenIterator extends Iterator<Token> {
+    /**
+     * @return 最近一次 {@link #next()} 返回的词法单元在源代码中的偏移
+     */
+    long getOffset();
+
+    /**
+     * @return 源代码的行首索引, 已返回的词法单元的位置总能在其中查到
+     */
+    LineIndex getLineIndex();
+}
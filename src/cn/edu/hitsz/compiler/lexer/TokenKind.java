@@ -29,6 +29,7 @@ public class TokenKind extends Term {
     // 允许用作 TokenKind 的 id 的字符串集合
     private static final Map<String, TokenKind> allowed = new HashMap<>();
     private static final TokenKind eof = new TokenKind("$", -1);
+    private static TokenKind[] byCode = new TokenKind[0];
 
     /**
      * 从码点文件中读取允许的标识符集合
@@ -52,6 +53,16 @@ public class TokenKind extends Term {
 
         // EOF
         allowed.put("$", eof);
+
+        // 码点到类型的反查表, 下标为码点 + 1 (EOF 的码点为 -1)
+        final int maxCode = allowed.values().stream().mapToInt(TokenKind::getCode).max().orElse(-1);
+        byCode = new TokenKind[maxCode + 2];
+        for (final var kind : allowed.values()) {
+            if (byCode[kind.code + 1] != null) {
+                throw new RuntimeException("Duplicated code in coding map: " + kind.code);
+            }
+            byCode[kind.code + 1] = kind;
+        }
     }
 
     /**
@@ -86,6 +97,20 @@ public class TokenKind extends Term {
         return allowed.get(id);
     }
 
+    /**
+     * @param code 码点
+     * @return 具有该码点的 TokenKind
+     * @throws RuntimeException 码点文件尚未被读取, 或不存在具有该码点的 TokenKind
+     */
+    public static TokenKind fromCode(int code) {
+        final int index = code + 1;
+        if (index < 0 || index >= byCode.length || byCode[index] == null) {
+            throw new RuntimeException("Illegal code: " + code);
+        }
+
+        return byCode[index];
+    }
+
     /**
      * @return 代表 EOF 的 TokenKind
      */
@@ -107,10 +132,19 @@ public class TokenKind extends Term {
         return code;
     }
 
+    /**
+     * @return 该类型唯一的不带文本的 token 实例
+     */
+    Token getSimpleToken() {
+        return simpleToken;
+    }
+
     private TokenKind(String id, int code) {
         super(id);
         this.code = code;
+        this.simpleToken = Token.createSimple(this);
     }
 
     private final int code;
+    private final Token simpleToken;
 }
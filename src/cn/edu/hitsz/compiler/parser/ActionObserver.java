@@ -16,8 +16,8 @@ import cn.edu.hitsz.compiler.symtab.SymbolTable;
  * 中, 我们只能在自己的代码实现中根据传入的 production 不同再进行动作的分派, 以此来实现 SDT. 关于此接口的一个使用的例子可以参考
  * ProductionCollector 类
  * <br>
- * 注意观察者并不能访问到 LR 驱动程序维护着的状态栈, 观察者之间维护的栈信息也不应该互相访问. 每一个实现该接口的观察者需要自己定义自己需要的
- * 状态信息并维护自己的状态栈.
+ * 注意观察者并不能访问到 LR 驱动程序维护着的状态栈. 驱动程序另外维护了一个所有观察者共享的语义值栈 ({@link SemanticStack}),
+ * 观察者可以在规约时按位置读取产生式体的值并设置产生式头的值, 而不必自己维护与分析栈平行的栈.
  *
  * @see ProductionCollector
  * @see SyntaxAnalyzer
@@ -54,4 +54,34 @@ public interface ActionObserver {
      * @param table 符号表
      */
     void setSymbolTable(SymbolTable table);
+
+    /**
+     * 当驱动程序注册观察者时会调用此函数, 需要读写语义值的观察者可以把它存起来, 在 {@link #whenReduce} 中使用
+     *
+     * @param stack 驱动程序维护的语义值栈
+     */
+    default void setSemanticStack(SemanticStack stack) {
+    }
+
+    /**
+     * 观察者是否忽略移入动作. 返回 true 的观察者不会再收到 {@link #whenShift} 的调用,
+     * 所有观察者都忽略移入时, 驱动程序在移入时不做任何通知
+     *
+     * @return 是否忽略移入, 默认为 false
+     */
+    default boolean ignoresShift() {
+        return false;
+    }
+
+    /**
+     * 观察者是否需要被告知单一产生式 (如 {@code E -> A}) 的规约
+     * <br>
+     * 驱动程序会把一次规约之后紧接着的单一产生式规约链一步折叠完成 (见 {@link cn.edu.hitsz.compiler.parser.table.UnitChains}),
+     * 链上的各次规约只报告给返回 true 的观察者. 只依赖默认的 $$ = $1 传递语义值的观察者可以返回 false, 以省去这些调用.
+     *
+     * @return 是否需要单一产生式的规约, 默认为 true
+     */
+    default boolean needsUnitReductions() {
+        return true;
+    }
 }
@@ -0,0 +1,171 @@
+package cn.edu.hitsz.compiler.parser;
+
+import cn.edu.hitsz.compiler.lexer.Token;
+import cn.edu.hitsz.compiler.parser.table.Production;
+import cn.edu.hitsz.compiler.parser.table.Status;
+import cn.edu.hitsz.compiler.symtab.SymbolTable;
+
+import java.util.List;
+
+/**
+ * 把若干观察者融合成一个观察者
+ * <br>
+ * 驱动程序若在每个动作上遍历 {@code List<ActionObserver>}, 循环体中的那一处接口调用会见到所有观察者的类型, 很快变成多态的调用点而无法内联.
+ * 融合后的观察者把每个成员放在各自的字段上, 用展开的语句逐个调用, 每个调用点只会见到一种类型;
+ * 驱动程序那一侧的调用点也只会见到 {@link #NONE} 与某一种融合类两种类型.
+ * <br>
+ * 成员较少时使用专门的 {@code Fused2}/{@code Fused3}, 更多时退回到数组循环.
+ */
+final class FusedObserver {
+    /**
+     * 什么也不做的观察者, 用于没有成员的情形
+     */
+    static final ActionObserver NONE = new None();
+
+    /**
+     * 按给定顺序融合观察者
+     *
+     * @param observers 观察者
+     * @return 融合后的观察者, 只有一个成员时就是它本身
+     */
+    static ActionObserver fuse(List<ActionObserver> observers) {
+        return switch (observers.size()) {
+            case 0 -> NONE;
+            case 1 -> observers.get(0);
+            case 2 -> new Fused2(observers.get(0), observers.get(1));
+            case 3 -> new Fused3(observers.get(0), observers.get(1), observers.get(2));
+            default -> new FusedMany(observers.toArray(new ActionObserver[0]));
+        };
+    }
+
+    private static final class None implements ActionObserver {
+        @Override
+        public void whenShift(Status currentStatus, Token currentToken) {
+        }
+
+        @Override
+        public void whenReduce(Status currentStatus, Production production) {
+        }
+
+        @Override
+        public void whenAccept(Status currentStatus) {
+        }
+
+        @Override
+        public void setSymbolTable(SymbolTable table) {
+        }
+    }
+
+    private static final class Fused2 implements ActionObserver {
+        Fused2(ActionObserver first, ActionObserver second) {
+            this.first = first;
+            this.second = second;
+        }
+
+        @Override
+        public void whenShift(Status currentStatus, Token currentToken) {
+            first.whenShift(currentStatus, currentToken);
+            second.whenShift(currentStatus, currentToken);
+        }
+
+        @Override
+        public void whenReduce(Status currentStatus, Production production) {
+            first.whenReduce(currentStatus, production);
+            second.whenReduce(currentStatus, production);
+        }
+
+        @Override
+        public void whenAccept(Status currentStatus) {
+            first.whenAccept(currentStatus);
+            second.whenAccept(currentStatus);
+        }
+
+        @Override
+        public void setSymbolTable(SymbolTable table) {
+            first.setSymbolTable(table);
+            second.setSymbolTable(table);
+        }
+
+        private final ActionObserver first;
+        private final ActionObserver second;
+    }
+
+    private static final class Fused3 implements ActionObserver {
+        Fused3(ActionObserver first, ActionObserver second, ActionObserver third) {
+            this.first = first;
+            this.second = second;
+            this.third = third;
+        }
+
+        @Override
+        public void whenShift(Status currentStatus, Token currentToken) {
+            first.whenShift(currentStatus, currentToken);
+            second.whenShift(currentStatus, currentToken);
+            third.whenShift(currentStatus, currentToken);
+        }
+
+        @Override
+        public void whenReduce(Status currentStatus, Production production) {
+            first.whenReduce(currentStatus, production);
+            second.whenReduce(currentStatus, production);
+            third.whenReduce(currentStatus, production);
+        }
+
+        @Override
+        public void whenAccept(Status currentStatus) {
+            first.whenAccept(currentStatus);
+            second.whenAccept(currentStatus);
+            third.whenAccept(currentStatus);
+        }
+
+        @Override
+        public void setSymbolTable(SymbolTable table) {
+            first.setSymbolTable(table);
+            second.setSymbolTable(table);
+            third.setSymbolTable(table);
+        }
+
+        private final ActionObserver first;
+        private final ActionObserver second;
+        private final ActionObserver third;
+    }
+
+    private static final class FusedMany implements ActionObserver {
+        FusedMany(ActionObserver[] observers) {
+            this.observers = observers;
+        }
+
+        @Override
+        public void whenShift(Status currentStatus, Token currentToken) {
+            for (final var observer : observers) {
+                observer.whenShift(currentStatus, currentToken);
+            }
+        }
+
+        @Override
+        public void whenReduce(Status currentStatus, Production production) {
+            for (final var observer : observers) {
+                observer.whenReduce(currentStatus, production);
+            }
+        }
+
+        @Override
+        public void whenAccept(Status currentStatus) {
+            for (final var observer : observers) {
+                observer.whenAccept(currentStatus);
+            }
+        }
+
+        @Override
+        public void setSymbolTable(SymbolTable table) {
+            for (final var observer : observers) {
+                observer.setSymbolTable(table);
+            }
+        }
+
+        private final ActionObserver[] observers;
+    }
+
+    private FusedObserver() {
+    }
+}
@@ -8,14 +8,11 @@ import cn.edu.hitsz.compiler.ir.Instruction;
 import cn.edu.hitsz.compiler.lexer.Token;
 import cn.edu.hitsz.compiler.parser.table.Production;
 import cn.edu.hitsz.compiler.parser.table.Status;
-import cn.edu.hitsz.compiler.parser.table.Symbol;
-import cn.edu.hitsz.compiler.symtab.SourceCodeType;
 import cn.edu.hitsz.compiler.symtab.SymbolTable;
 import cn.edu.hitsz.compiler.utils.FileUtils;
 
 import java.util.ArrayList;
 import java.util.List;
-import java.util.Stack;
 
 // TODO: 实验三: 实现 IR 生成
 
@@ -26,181 +23,107 @@ public class IRGenerator implements ActionObserver {
 
     private SymbolTable symbolTable;
 
-    // 语义分析栈
-    private final Stack<Symbol> symbolStack = new Stack<>();
-    private final Stack<IRValue> irValueStack = new Stack<>();
+    // 语义值栈, 由驱动程序维护并与其它观察者共享
+    private SemanticStack semanticStack;
 
     // 中间代码序列(需要返回)
     private final List<Instruction> irList = new ArrayList<>();
 
+    // 已分配的临时变量数, 临时变量的编号在每次编译之内从 0 开始
+    private int tempCount = 0;
+
 
     @Override
     public void whenShift(Status currentStatus, Token currentToken) {
-        // TODO
-
-        symbolStack.push(new Symbol(currentToken));
-        irValueStack.push(null);
-        // throw new NotImplementedException();
+        // 词法单元由驱动程序压入语义值栈, 这里无需任何动作
     }
 
     @Override
     public void whenReduce(Status currentStatus, Production production) {
-        // TODO
-
-        // 根据产生式规则进行语义分析
+        // 根据产生式规则进行语义分析; 产生式体的值按位置从共享的语义值栈中读取, 未设置 $$ 时默认为 $1
         switch (production.index()) {
             case 6 -> {
                 // S -> id = E
-                symbolStack.pop();
-                symbolStack.pop();
-                Symbol id = symbolStack.pop();
-                IRValue EValue = irValueStack.pop();
-                irValueStack.pop();
-                irValueStack.pop();
+                Token token = semanticStack.get(1);
+                IRValue EValue = semanticStack.get(3);
 
                 // id为具体变量
-                Token token = id.getToken();
                 if(!symbolTable.has(token.getText())){
-                    throw new RuntimeException("SymbolTable no such id");
+                    throw new RuntimeException("SymbolTable no such id " + token.getText() + " at " + semanticStack.describePosition(1));
                 }
                 IRVariable idValue = IRVariable.named(token.getText());
 
                 // MOV id E
                 irList.add(Instruction.createMov(idValue, EValue));
-
-                // 填入S
-                symbolStack.push(new Symbol(production.head()));
-                irValueStack.push(null);
             }
             case 7 -> {
                 // S -> return E
-                symbolStack.pop();
-                symbolStack.pop();
-                IRValue EValue = irValueStack.pop();
-                irValueStack.pop();
+                IRValue EValue = semanticStack.get(2);
 
                 // RET E
                 irList.add(Instruction.createRet(EValue));
-
-                // 填入S
-                symbolStack.push(new Symbol(production.head()));
-                irValueStack.push(null);
             }
             case 8 -> {
                 // E -> E + A
-                symbolStack.pop();
-                symbolStack.pop();
-                symbolStack.pop();
-                IRValue AValue = irValueStack.pop();
-                irValueStack.pop();
-                IRValue EValue = irValueStack.pop();
+                IRValue EValue = semanticStack.get(1);
+                IRValue AValue = semanticStack.get(3);
 
                 // ADD E E A
-                IRVariable EValueTemp = IRVariable.temp();
+                IRVariable EValueTemp = IRVariable.temp(tempCount++);
                 irList.add(Instruction.createAdd(EValueTemp, EValue, AValue));
 
                 // 填入E
-                symbolStack.push(new Symbol(production.head()));
-                irValueStack.push(EValueTemp);
+                semanticStack.setResult(EValueTemp);
             }
             case 9 -> {
                 // E -> E - A
-                symbolStack.pop();
-                symbolStack.pop();
-                symbolStack.pop();
-                IRValue AValue = irValueStack.pop();
-                irValueStack.pop();
-                IRValue EValue = irValueStack.pop();
+                IRValue EValue = semanticStack.get(1);
+                IRValue AValue = semanticStack.get(3);
 
                 // SUB E E A
-                IRVariable EValueTemp = IRVariable.temp();
+                IRVariable EValueTemp = IRVariable.temp(tempCount++);
                 irList.add(Instruction.createSub(EValueTemp, EValue, AValue));
 
                 // 填入E
-                symbolStack.push(new Symbol(production.head()));
-                irValueStack.push(EValueTemp);
-            }
-            case 10, 12 -> {
-                // E -> A or A -> B
-                symbolStack.pop();
-                IRValue value = irValueStack.pop();
-
-                // 填入A or B
-                symbolStack.push(new Symbol(production.head()));
-                irValueStack.push(value);
+                semanticStack.setResult(EValueTemp);
             }
             case 11 -> {
                 // A -> A * B
-                symbolStack.pop();
-                symbolStack.pop();
-                symbolStack.pop();
-                IRValue BValue = irValueStack.pop();
-                irValueStack.pop();
-                IRValue AValue = irValueStack.pop();
+                IRValue AValue = semanticStack.get(1);
+                IRValue BValue = semanticStack.get(3);
 
                 // MUL A A B
-                IRVariable AValueTemp = IRVariable.temp();
+                IRVariable AValueTemp = IRVariable.temp(tempCount++);
                 irList.add(Instruction.createMul(AValueTemp, AValue, BValue));
 
                 // 填入temp
-                symbolStack.push(new Symbol(production.head()));
-                irValueStack.push(AValueTemp);
+                semanticStack.setResult(AValueTemp);
             }
             case 13 -> {
                 // B -> ( E )
-                symbolStack.pop();
-                symbolStack.pop();
-                symbolStack.pop();
-                irValueStack.pop();
-                IRValue EValue = irValueStack.pop();
-                irValueStack.pop();
-
-                // 填入B
-                symbolStack.push(new Symbol(production.head()));
-                IRValue BValue = EValue;
-                irValueStack.push(BValue);
+                semanticStack.setResult(semanticStack.get(2));
             }
             case 14 -> {
                 // B -> id
-                Symbol id = symbolStack.pop();
-                IRValue idValue = irValueStack.pop();
-
-                Token token = id.getToken();
+                Token token = semanticStack.get(1);
                 if(!symbolTable.has(token.getText())){
-                    throw new RuntimeException("SymbolTable no such id");
+                    throw new RuntimeException("SymbolTable no such id " + token.getText() + " at " + semanticStack.describePosition(1));
                 }
 
                 // 填入B
-                symbolStack.push(new Symbol(production.head()));
-                IRValue BValue = IRVariable.named(token.getText());
-                irValueStack.push(BValue);
+                semanticStack.setResult(IRVariable.named(token.getText()));
             }
             case 15 -> {
                 // B -> IntConst
-                Symbol intConst = symbolStack.pop();
-                irValueStack.pop();
+                Token token = semanticStack.get(1);
 
                 // 填入B
-                symbolStack.push(new Symbol(production.head()));
-                Token token = intConst.getToken();
-                IRImmediate BValue = IRImmediate.of(Integer.parseInt(token.getText()));
-                irValueStack.push(BValue);
+                semanticStack.setResult(IRImmediate.of(Integer.parseInt(token.getText())));
             }
             default -> {
-                // 弹出产生式右部
-                int cnt = production.body().size();
-                while (cnt > 0) {
-                    symbolStack.pop();
-                    irValueStack.pop();
-                    --cnt;
-                }
-
-                // 占位
-                symbolStack.push(new Symbol(production.head()));
-                irValueStack.push(null);
+                // E -> A, A -> B 等直接沿用 $1, 其余产生式没有 IR 需要生成
             }
         }
-        // throw new NotImplementedException();
     }
 
 
@@ -221,6 +144,23 @@ public class IRGenerator implements ActionObserver {
         // throw new NotImplementedException();
     }
 
+    @Override
+    public void setSemanticStack(SemanticStack stack) {
+        semanticStack = stack;
+    }
+
+    @Override
+    public boolean ignoresShift() {
+        // 词法单元由驱动程序压入语义值栈
+        return true;
+    }
+
+    @Override
+    public boolean needsUnitReductions() {
+        // 单一产生式只传递 $1, 不需要任何动作
+        return false;
+    }
+
     public List<Instruction> getIR() {
         // TODO
         return irList;
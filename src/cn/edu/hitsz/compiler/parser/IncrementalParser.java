@@ -0,0 +1,393 @@
+package cn.edu.hitsz.compiler.parser;
+
+import cn.edu.hitsz.compiler.lexer.LineIndex;
+import cn.edu.hitsz.compiler.lexer.TokenBuffer;
+import cn.edu.hitsz.compiler.lexer.TokenEdit;
+import cn.edu.hitsz.compiler.lexer.TokenKind;
+import cn.edu.hitsz.compiler.parser.table.CompiledLRTable;
+import cn.edu.hitsz.compiler.parser.table.ParseTable;
+import cn.edu.hitsz.compiler.symtab.SymbolTable;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * 增量 LR 语法分析
+ * <br>
+ * 与 {@link cn.edu.hitsz.compiler.lexer.IncrementalLexer} 配合使用: 每次编辑之后, 词法分析只重新识别受影响的语句,
+ * 语法分析也只重新分析这些语句. 该类在每个语句边界 (移入同步终结符, 即 {@code S Semicolon} 中的分号之后) 保存一个检查点,
+ * 记录此时的状态栈. 编辑之后从编辑处之前最近的检查点恢复分析; 越过编辑范围后, 一旦某个语句边界上的状态栈与旧的分析在对应位置上重新同步,
+ * 由于之后的输入也与旧的相同, LR 分析的其余部分必然与旧的一致, 分析就在此停止, 旧的其余检查点平移后继续使用.
+ * 这样每次重新分析的词法单元数只与编辑的大小有关, 而与文件大小无关.
+ * <br>
+ * 状态栈以共享前缀的链表存放: 各检查点的状态栈大部分都相同 (如右递归的 {@code S_list} 会把所有语句都压在栈里),
+ * 每个检查点只需要一个指向栈顶结点的引用, 而不必复制整个栈.
+ * <br>
+ * 观察者只会收到重新分析的那些语句中的动作. 从检查点恢复时, 检查点之下的语义值已不可知 ({@link SemanticStack#get(int)} 读到 null);
+ * 跨越多个语句的规约 (如右递归的 {@code S_list} 在 EOF 处的一连串规约) 与 accept 只有在分析一直进行到 EOF 时才会收到,
+ * 增删语句之后它们不会为此重放.
+ * <br>
+ * 出现语法错误时, 出错位置之前的检查点仍然有效而被保留, 之后的检查点被丢弃, 出错的语句直到 EOF 记为未分析的区间.
+ * 下一次重新分析从不晚于该区间的检查点开始, 一直分析到 EOF 或是再次出错, 相当于把该区间并入了新的编辑.
+ */
+public class IncrementalParser {
+    /**
+     * @param symbolTable 提供给观察者的符号表
+     * @param lrTable     分析表
+     * @param syncToken   标志语句边界的终结符, 如 Semicolon
+     */
+    public IncrementalParser(SymbolTable symbolTable, ParseTable lrTable, TokenKind syncToken) {
+        this.symbolTable = symbolTable;
+        this.lrTable = lrTable;
+        this.syncCode = syncToken.getCode();
+    }
+
+    /**
+     * 注册新的观察者
+     *
+     * @param observer 观察者
+     */
+    public void registerObserver(ActionObserver observer) {
+        observers.add(observer);
+        observer.setSymbolTable(symbolTable);
+        observer.setSemanticStack(semanticStack);
+        shiftObserver = FusedObserver.fuse(observers.stream().filter(o -> !o.ignoresShift()).toList());
+        reduceObserver = FusedObserver.fuse(observers);
+    }
+
+    /**
+     * 完整地分析整个词法单元序列, 并建立各语句边界上的检查点
+     *
+     * @param tokens 词法单元序列, 最后一个为 EOF
+     */
+    public void parse(TokenBuffer tokens) {
+        dirtyFrom = -1;
+        checkpointTokens = new int[]{0};
+        checkpointStacks = new StackNode[]{new StackNode(lrTable.getInit(), null)};
+        checkpointDepths = new int[]{0};
+        checkpointLows = new int[]{0};
+        checkpointCount = 1;
+        resume(tokens, 0, null);
+    }
+
+    /**
+     * 在词法单元序列被编辑之后, 只重新分析受影响的部分
+     * <br>
+     * 出现语法错误时抛出异常, 只保留出错位置之前的检查点, 观察者可能已经收到了出错位置之前的一部分动作.
+     * 之后可以继续编辑并调用该方法, 上次未能分析的部分会一并重新分析.
+     *
+     * @param tokens 编辑后的词法单元序列
+     * @param edit   编辑在词法单元序列上造成的改动
+     * @return 重新分析的词法单元个数
+     */
+    public int reparse(TokenBuffer tokens, TokenEdit edit) {
+        if (checkpointCount == 0) {
+            throw new RuntimeException("Tokens have not been parsed");
+        }
+
+        if (dirtyFrom < 0) {
+            // 编辑处之前 (含) 最近的检查点
+            final int checkpoint = Math.max(0, search(edit.from() + 1) - 1);
+            return resume(tokens, checkpoint, edit);
+        }
+
+        // 上次分析出错, 未分析的区间延伸到 EOF, 与新的编辑合并后也延伸到 EOF: 从两者之前的检查点开始, 不尝试同步
+        final int checkpoint = Math.max(0, search(Math.min(edit.from(), dirtyFrom) + 1) - 1);
+        return resume(tokens, checkpoint, null);
+    }
+
+    /**
+     * @return 检查点的个数, 即已分析的语句数加一 (起始状态)
+     */
+    public int getCheckpointCount() {
+        return checkpointCount;
+    }
+
+    /**
+     * 从第 {@code checkpoint} 个检查点开始分析, 直到与旧的分析重新同步或者分析结束
+     *
+     * @param tokens     词法单元序列
+     * @param checkpoint 恢复分析的检查点
+     * @param edit       编辑在词法单元序列上造成的改动, 为 null 时不尝试同步
+     * @return 分析的词法单元个数
+     */
+    private int resume(TokenBuffer tokens, int checkpoint, TokenEdit edit) {
+        final int startToken = checkpointTokens[checkpoint];
+        StackNode stack = checkpointStacks[checkpoint];
+        int depth = checkpointDepths[checkpoint];
+        int low = depth;
+        semanticStack.clear(depth);
+
+        // 新建立的检查点, 分析成功之后才替换掉旧的
+        final var pending = new Checkpoints();
+
+        int index = startToken;
+        int code = tokens.getCode(index);
+        while (true) {
+            final int action = lrTable.getAction(stack.state, code);
+
+            switch (CompiledLRTable.kindOf(action)) {
+                case CompiledLRTable.SHIFT -> {
+                    final int nextState = CompiledLRTable.payloadOf(action);
+                    final var token = tokens.get(index);
+                    if (shiftObserver != FusedObserver.NONE) {
+                        shiftObserver.whenShift(lrTable.getStatus(nextState), token);
+                    }
+                    semanticStack.push(token, tokens.getStart(index));
+                    stack = new StackNode(nextState, stack);
+                    depth++;
+                    final int shifted = code;
+                    index++;
+                    code = tokens.getCode(index);
+
+                    if (shifted == syncCode) {
+                        pending.add(index, stack, depth, low);
+                        low = depth;
+
+                        // 越过编辑范围之后, 尝试与旧的分析在对应位置上重新同步
+                        if (edit != null && index >= edit.from() + edit.inserted()
+                            && trySync(checkpoint, pending, index - edit.inserted() + edit.removed())) {
+                            return index - startToken;
+                        }
+                    }
+                }
+                case CompiledLRTable.REDUCE -> {
+                    final int production = CompiledLRTable.payloadOf(action);
+                    final int length = lrTable.getProductionLength(production);
+                    semanticStack.beginReduce(length);
+                    reduceObserver.whenReduce(lrTable.getStatus(stack.state), lrTable.getProduction(production));
+                    semanticStack.endReduce();
+                    for (int i = 0; i < length; i++) {
+                        stack = stack.below;
+                    }
+                    depth -= length;
+                    low = Math.min(low, depth);
+                    // 与 SyntaxAnalyzer 相同, 压缩的分析表在没有 goto 处也可能返回默认值, 因此用 hasGoto 判断
+                    if (!lrTable.hasGoto(stack.state, production)) {
+                        throw fail(checkpoint, pending, tokens, index);
+                    }
+                    final int nextState = lrTable.getGoto(stack.state, production);
+                    stack = new StackNode(nextState, stack);
+                    depth++;
+                }
+                case CompiledLRTable.ACCEPT -> {
+                    reduceObserver.whenAccept(lrTable.getStatus(stack.state));
+                    commit(checkpoint, pending, checkpointCount, 0, 0);
+                    return index - startToken + 1;
+                }
+                default -> throw fail(checkpoint, pending, tokens, index);
+            }
+        }
+    }
+
+    /**
+     * 尝试让新建立的最后一个检查点与旧的分析在词法单元 {@code oldToken} 处的检查点重新同步, 成功时提交新的检查点
+     * <br>
+     * 旧的分析在之后的各个检查点之间弹栈最低只弹到某个深度, 因此只要新旧状态栈在这个深度及其之上的状态相同, 之后的分析就必然与旧的一致.
+     * 这里并不要求两个栈的深度相同: 右递归的 {@code S_list} 使得增删语句后栈的深度永远不同, 但之后的分析只会看到栈顶的几个状态.
+     * 同步时把旧栈在该深度上的结点接到新栈上, 并让新的检查点也改为引用这个结点, 之后的旧检查点就成了新的分析中的检查点,
+     * 各检查点的状态栈仍然像一次完整的分析那样共享结点.
+     *
+     * @return 是否同步成功
+     */
+    private boolean trySync(int checkpoint, Checkpoints pending, int oldToken) {
+        final int old = search(oldToken);
+        if (old >= checkpointCount || old <= checkpoint || checkpointTokens[old] != oldToken) {
+            return false;
+        }
+
+        final int last = pending.count - 1;
+        final int depth = pending.depths[last];
+        final int oldDepth = checkpointDepths[old];
+        final int keep = Math.min(oldDepth, minLow(old + 1, checkpointCount));
+        final int above = oldDepth - keep;
+        if (above > depth) {
+            return false;
+        }
+
+        // 自顶向下比较到深度 keep 为止
+        var node = pending.stacks[last];
+        var oldNode = checkpointStacks[old];
+        for (int i = 0; i < above; i++) {
+            if (node.state != oldNode.state) {
+                return false;
+            }
+            node = node.below;
+            oldNode = oldNode.below;
+        }
+        if (node.state != oldNode.state) {
+            return false;
+        }
+
+        if (node != oldNode) {
+            // 只有在第 checkpoint 个检查点之后压入的旧结点才不会被保留下来的前面的检查点引用, 可以原地修改
+            if (keep <= checkpointDepths[checkpoint]) {
+                return false;
+            }
+            merge(pending, node, depth - above, oldNode);
+        }
+
+        commit(checkpoint, pending, old + 1, pending.tokens[last] - oldToken, depth - oldDepth);
+        return true;
+    }
+
+    /**
+     * 用旧结点 {@code to} 取代新结点 {@code from}: 让 to 接到 from 之下, 并把新的检查点中对 from 的引用都改为 to
+     *
+     * @param fromDepth from 的深度
+     */
+    private static void merge(Checkpoints pending, StackNode from, int fromDepth, StackNode to) {
+        to.below = from.below;
+        for (int i = pending.count - 1; i >= 0; i--) {
+            if (pending.stacks[i] == from) {
+                pending.stacks[i] = to;
+            } else if (pending.depths[i] > fromDepth) {
+                var node = pending.stacks[i];
+                for (int d = pending.depths[i]; d > fromDepth + 1; d--) {
+                    node = node.below;
+                }
+                if (node.below == from) {
+                    node.below = to;
+                }
+            }
+        }
+    }
+
+    /**
+     * 用新建立的检查点替换旧的: 保留前 {@code checkpoint + 1} 个旧检查点, 接上新的检查点, 再接上从 {@code keepFrom} 开始的旧检查点,
+     * 后者的词法单元下标需要平移 {@code tokenShift}, 栈的深度需要平移 {@code depthShift}
+     */
+    private void commit(int checkpoint, Checkpoints pending, int keepFrom, int tokenShift, int depthShift) {
+        final int kept = checkpointCount - keepFrom;
+        final int count = checkpoint + 1 + pending.count + kept;
+        final var tokens = Arrays.copyOf(checkpointTokens, count);
+        final var stacks = Arrays.copyOf(checkpointStacks, count);
+        final var depths = Arrays.copyOf(checkpointDepths, count);
+        final var lows = Arrays.copyOf(checkpointLows, count);
+
+        // 先挪动保留的尾部, 再写入新的检查点
+        final int tail = count - kept;
+        System.arraycopy(checkpointTokens, keepFrom, tokens, tail, kept);
+        System.arraycopy(checkpointStacks, keepFrom, stacks, tail, kept);
+        System.arraycopy(checkpointDepths, keepFrom, depths, tail, kept);
+        System.arraycopy(checkpointLows, keepFrom, lows, tail, kept);
+        for (int i = tail; i < count; i++) {
+            tokens[i] += tokenShift;
+            depths[i] += depthShift;
+            lows[i] += depthShift;
+        }
+        System.arraycopy(pending.tokens, 0, tokens, checkpoint + 1, pending.count);
+        System.arraycopy(pending.stacks, 0, stacks, checkpoint + 1, pending.count);
+        System.arraycopy(pending.depths, 0, depths, checkpoint + 1, pending.count);
+        System.arraycopy(pending.lows, 0, lows, checkpoint + 1, pending.count);
+
+        checkpointTokens = tokens;
+        checkpointStacks = stacks;
+        checkpointDepths = depths;
+        checkpointLows = lows;
+        checkpointCount = count;
+        dirtyFrom = -1;
+    }
+
+    /**
+     * @param tokenIndex 词法单元下标
+     * @return 第一个词法单元下标不小于 tokenIndex 的检查点, 不存在时为检查点的个数
+     */
+    private int search(int tokenIndex) {
+        final int found = Arrays.binarySearch(checkpointTokens, 0, checkpointCount, tokenIndex);
+        return found >= 0 ? found : -found - 1;
+    }
+
+    /**
+     * @return 第 from (含) 到第 to (不含) 个检查点之间分析时栈的最小深度
+     */
+    private int minLow(int from, int to) {
+        int min = Integer.MAX_VALUE;
+        for (int i = from; i < to; i++) {
+            min = Math.min(min, checkpointLows[i]);
+        }
+        return min;
+    }
+
+    /**
+     * 分析出错: 提交出错位置之前新建立的检查点并丢弃其后的旧检查点 (它们的词法单元下标已无法与编辑后的序列对应),
+     * 记下未分析的区间
+     */
+    private RuntimeException fail(int checkpoint, Checkpoints pending, TokenBuffer tokens, int index) {
+        commit(checkpoint, pending, checkpointCount, 0, 0);
+        dirtyFrom = checkpointTokens[checkpointCount - 1];
+        return syntaxError(tokens, index);
+    }
+
+    private RuntimeException syntaxError(TokenBuffer tokens, int index) {
+        // 只有出错时才需要行号, 此时再扫描源代码建立行首索引
+        final var position = LineIndex.of(tokens.getSource()).format(tokens.getStart(index));
+        return new RuntimeException("Syntax error at %s: unexpected %s".formatted(position, tokens.get(index)));
+    }
+
+    /**
+     * 状态栈的结点, 各检查点的状态栈共享公共的前缀
+     */
+    private static final class StackNode {
+        StackNode(int state, StackNode below) {
+            this.state = state;
+            this.below = below;
+        }
+
+        final int state;
+
+        /**
+         * 重新同步时可能被改为指向新的栈, 见 {@link #merge(Checkpoints, StackNode, int, StackNode)}
+         */
+        StackNode below;
+    }
+
+    /**
+     * 一次分析中新建立的检查点
+     */
+    private static final class Checkpoints {
+        void add(int token, StackNode stack, int depth, int low) {
+            if (count == tokens.length) {
+                tokens = Arrays.copyOf(tokens, count * 2);
+                stacks = Arrays.copyOf(stacks, count * 2);
+                depths = Arrays.copyOf(depths, count * 2);
+                lows = Arrays.copyOf(lows, count * 2);
+            }
+            tokens[count] = token;
+            stacks[count] = stack;
+            depths[count] = depth;
+            lows[count++] = low;
+        }
+
+        int[] tokens = new int[16];
+        StackNode[] stacks = new StackNode[16];
+        int[] depths = new int[16];
+        int[] lows = new int[16];
+        int count = 0;
+    }
+
+    private final SymbolTable symbolTable;
+    private final ParseTable lrTable;
+    private final int syncCode;
+
+    private final List<ActionObserver> observers = new ArrayList<>();
+    private ActionObserver shiftObserver = FusedObserver.NONE;
+    private ActionObserver reduceObserver = FusedObserver.NONE;
+    private final SemanticStack semanticStack = new SemanticStack();
+
+    /**
+     * 各检查点恢复分析时的第一个词法单元的下标 (递增), 状态栈, 栈的深度 (文法符号数),
+     * 以及从上一个检查点分析到该检查点的过程中栈的最小深度
+     */
+    private int[] checkpointTokens = new int[0];
+    private StackNode[] checkpointStacks = new StackNode[0];
+    private int[] checkpointDepths = new int[0];
+    private int[] checkpointLows = new int[0];
+    private int checkpointCount = 0;
+
+    /**
+     * 上次分析出错时未能分析的区间的起点 (最后一个检查点的词法单元下标), 该区间一直延伸到 EOF; 为 -1 表示没有
+     */
+    private int dirtyFrom = -1;
+}
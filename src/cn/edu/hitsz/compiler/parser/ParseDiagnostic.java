@@ -0,0 +1,33 @@
+package cn.edu.hitsz.compiler.parser;
+
+import cn.edu.hitsz.compiler.lexer.LineIndex;
+import cn.edu.hitsz.compiler.lexer.Token;
+
+/**
+ * 错误恢复模式下记录的一条语法错误
+ * <br>
+ * 只保存出错位置的偏移, 行号与列号在需要时才经由行首索引换算出来.
+ *
+ * @param tokenIndex 出错的词法单元在词法单元序列中的下标, 从 0 开始
+ * @param offset     出错的词法单元在源代码中的偏移, 未知时为 -1
+ * @param token      出错的词法单元
+ * @param skipped    恢复时跳过的词法单元个数
+ * @param lineIndex  源代码的行首索引, 未知时为 null
+ */
+public record ParseDiagnostic(int tokenIndex, long offset, Token token, int skipped, LineIndex lineIndex) {
+    /**
+     * @return 形如 "line 3, column 7" 的位置描述, 不知道源代码位置时退回到词法单元的下标
+     */
+    public String getPosition() {
+        return describe(tokenIndex, offset, lineIndex);
+    }
+
+    @Override
+    public String toString() {
+        return "Syntax error at %s: unexpected %s, skipped %d token(s)".formatted(getPosition(), token, skipped);
+    }
+
+    static String describe(int tokenIndex, long offset, LineIndex lineIndex) {
+        return lineIndex != null && offset >= 0 ? lineIndex.format(offset) : "token #" + tokenIndex;
+    }
+}
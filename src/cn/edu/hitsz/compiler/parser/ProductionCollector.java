@@ -43,6 +43,11 @@ public class ProductionCollector implements ActionObserver {
         // do nothing
     }
 
+    @Override
+    public boolean ignoresShift() {
+        return true;
+    }
+
     @Override
     public void whenAccept(Status currentStatus) {
         // 当接受时, 记录下对起始产生式的规约
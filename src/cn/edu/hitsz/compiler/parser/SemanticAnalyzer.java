@@ -10,14 +10,12 @@ import cn.edu.hitsz.compiler.symtab.SymbolTableEntry;
 
 import java.lang.reflect.Type;
 import java.util.Objects;
-import java.util.Stack;
 
 // TODO: 实验三: 实现语义分析
 public class SemanticAnalyzer implements ActionObserver {
 
     private SymbolTable symbolTable;
-    private final Stack<Token> tokenStack = new Stack<>();
-    private final Stack<SourceCodeType> typeStack = new Stack<>();
+    private SemanticStack semanticStack;
 
     @Override
     public void whenAccept(Status currentStatus) {
@@ -35,23 +33,22 @@ public class SemanticAnalyzer implements ActionObserver {
         switch (production.index()) {
             case 4 -> {
                 // S -> D id
-                Token token = tokenStack.get(tokenStack.size() - 1);
+                SourceCodeType type = semanticStack.get(1);
+                Token token = semanticStack.get(2);
                 if (symbolTable.has(token.getText())) {
                     SymbolTableEntry symbolTableEntry = symbolTable.get(token.getText());
-                    symbolTableEntry.setType(typeStack.pop());
-                    tokenStack.pop();
+                    symbolTableEntry.setType(type);
                 } else {
                     // 发出异常
-                    throw new RuntimeException("Undefined variable: " + token.getText());
+                    throw new RuntimeException("Undefined variable: " + token.getText() + " at " + semanticStack.describePosition(2));
                 }
             }
             case 5 -> {
                 // D -> int
-                typeStack.push(SourceCodeType.Int);
+                semanticStack.setResult(SourceCodeType.Int);
             }
             default -> {
-                //  占位
-                typeStack.push(null);
+                // 其余产生式与类型无关
             }
         }
         // throw new NotImplementedException();
@@ -61,7 +58,7 @@ public class SemanticAnalyzer implements ActionObserver {
     public void whenShift(Status currentStatus, Token currentToken) {
         // TODO: 该过程在遇到 shift 时要采取的代码动作
 
-        tokenStack.push(currentToken);
+        // 词法单元由驱动程序压入语义值栈, 这里无需任何动作
         // throw new NotImplementedException();
     }
 
@@ -73,5 +70,22 @@ public class SemanticAnalyzer implements ActionObserver {
 
         // throw new NotImplementedException();
     }
+
+    @Override
+    public void setSemanticStack(SemanticStack stack) {
+        semanticStack = stack;
+    }
+
+    @Override
+    public boolean ignoresShift() {
+        // 词法单元由驱动程序压入语义值栈
+        return true;
+    }
+
+    @Override
+    public boolean needsUnitReductions() {
+        // 单一产生式只传递 $1, 不需要任何动作
+        return false;
+    }
 }
 
@@ -0,0 +1,176 @@
+package cn.edu.hitsz.compiler.parser;
+
+import cn.edu.hitsz.compiler.lexer.LineIndex;
+
+import java.util.Arrays;
+
+/**
+ * LR 驱动程序维护的语义值栈, 由所有观察者共享
+ * <br>
+ * 与 yacc 相同, 栈中的每个位置与分析栈中的一个文法符号对应: 移入时压入该词法单元 ({@link cn.edu.hitsz.compiler.lexer.Token}) 本身,
+ * 规约时弹出产生式体对应的各个值, 再压入产生式头的值. 观察者在 {@link ActionObserver#whenReduce} 中用 {@link #get(int)}
+ * 按位置读取产生式体的值 ($1, $2, ...), 并可以用 {@link #setResult(Object)} 设置产生式头的值 ($$).
+ * 没有观察者设置时, $$ 默认为 $1 (产生式体为空时为 null), 因此 {@code E -> A} 这类单一产生式不需要任何动作.
+ * <br>
+ * 同一次规约中至多只能有一个观察者设置 $$, 否则各观察者的结果会互相覆盖, 这种情况会直接报错.
+ * 观察者因而不必再各自维护一份与分析栈平行的栈.
+ * <br>
+ * 与每个值平行地, 栈中还保存了它在源代码中的偏移 (产生式头取产生式体第一个符号的偏移), 观察者报告错误时可以用
+ * {@link #describePosition(int)} 给出行号与列号. 偏移只是一个整数, 不会为每个词法单元分配位置对象.
+ */
+public final class SemanticStack {
+    /**
+     * 读取当前正在规约的产生式体中第 n 个符号的值, 只能在规约过程中调用
+     *
+     * @param n   符号在产生式体中的位置, 从 1 开始
+     * @param <T> 值的类型, 由调用者根据文法确定
+     * @return 该符号的值
+     */
+    @SuppressWarnings("unchecked")
+    public <T> T get(int n) {
+        if (length < 0) {
+            throw new RuntimeException("Semantic values can only be read during a reduction");
+        }
+        if (n < 1 || n > length) {
+            throw new RuntimeException("$%d is out of the production body of length %d".formatted(n, length));
+        }
+
+        return (T) valueAt(size - length + n - 1);
+    }
+
+    /**
+     * 读取当前正在规约的产生式体中第 n 个符号在源代码中的偏移, 只能在规约过程中调用
+     *
+     * @param n 符号在产生式体中的位置, 从 1 开始
+     * @return 偏移, 位置未知时为 -1
+     */
+    public long getOffset(int n) {
+        get(n);
+        return offsetAt(size - length + n - 1);
+    }
+
+    /**
+     * 描述当前正在规约的产生式体中第 n 个符号的位置, 用于错误信息
+     *
+     * @param n 符号在产生式体中的位置, 从 1 开始
+     * @return 形如 "line 3, column 7" 的位置描述, 位置未知时为 "unknown position"
+     */
+    public String describePosition(int n) {
+        final long offset = getOffset(n);
+        return lineIndex != null && offset >= 0 ? lineIndex.format(offset) : "unknown position";
+    }
+
+    /**
+     * 设置当前正在规约的产生式头的值 ($$), 只能在规约过程中调用, 且同一次规约中只能调用一次
+     *
+     * @param value 产生式头的值
+     */
+    public void setResult(Object value) {
+        if (length < 0) {
+            throw new RuntimeException("$$ can only be set during a reduction");
+        }
+        if (resultSet) {
+            throw new RuntimeException("$$ has already been set by another observer in this reduction");
+        }
+
+        result = value;
+        resultSet = true;
+    }
+
+    /**
+     * @return 栈中值的个数
+     */
+    public int size() {
+        return size;
+    }
+
+    //============================== 以下由驱动程序调用 ==============================
+
+    void push(Object value, long offset) {
+        final int slot = size - base;
+        if (slot == values.length) {
+            values = Arrays.copyOf(values, slot * 2);
+            offsets = Arrays.copyOf(offsets, slot * 2);
+        }
+        offsets[slot] = offset;
+        values[slot] = value;
+        size++;
+    }
+
+    /**
+     * 开始一次规约, 此后观察者可以读取产生式体的值
+     *
+     * @param length 产生式体的长度
+     */
+    void beginReduce(int length) {
+        if (length > size) {
+            throw new RuntimeException("Semantic stack underflow");
+        }
+
+        this.length = length;
+        this.result = length > 0 ? valueAt(size - length) : null;
+        this.resultOffset = length > 0 ? offsetAt(size - length) : -1;
+        this.resultSet = false;
+    }
+
+    /**
+     * 结束一次规约: 弹出产生式体的值并压入产生式头的值
+     */
+    void endReduce() {
+        // 产生式头的值总是落在产生式体的第一个位置上, 弹出的其余位置会被之后的压栈覆盖, 分析结束时再统一清空
+        size -= length;
+        base = Math.min(base, size);
+        length = -1;
+        push(result, resultOffset);
+        result = null;
+    }
+
+    private Object valueAt(int index) {
+        return index < base ? null : values[index - base];
+    }
+
+    private long offsetAt(int index) {
+        return index < base ? -1 : offsets[index - base];
+    }
+
+    void setLineIndex(LineIndex lineIndex) {
+        this.lineIndex = lineIndex;
+    }
+
+    void clear() {
+        clear(0);
+    }
+
+    /**
+     * 清空栈, 并在栈底留出若干个值未知的位置. 用于从中途的检查点恢复分析 (见 {@link IncrementalParser}),
+     * 这些位置上的值读出来是 null, 偏移是 -1, 而不需要为它们逐个占用空间
+     *
+     * @param unknown 值未知的位置数
+     */
+    void clear(int unknown) {
+        Arrays.fill(values, null);
+        size = unknown;
+        base = unknown;
+        length = -1;
+        result = null;
+        resultSet = false;
+    }
+
+    private Object[] values = new Object[256];
+    private long[] offsets = new long[256];
+    private int size = 0;
+
+    /**
+     * 数组首元素在栈中的位置, 其下的位置值未知
+     */
+    private int base = 0;
+    private LineIndex lineIndex = null;
+
+    /**
+     * 当前正在规约的产生式体的长度, 不在规约过程中时为 -1
+     */
+    private int length = -1;
+    private Object result = null;
+    private long resultOffset = -1;
+    private boolean resultSet = false;
+}
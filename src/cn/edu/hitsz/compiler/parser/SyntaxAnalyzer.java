@@ -1,12 +1,17 @@
 package cn.edu.hitsz.compiler.parser;
 
+import cn.edu.hitsz.compiler.lexer.LineIndex;
 import cn.edu.hitsz.compiler.lexer.Token;
+import cn.edu.hitsz.compiler.lexer.TokenIterator;
+import cn.edu.hitsz.compiler.lexer.TokenKind;
 import cn.edu.hitsz.compiler.parser.table.*;
 import cn.edu.hitsz.compiler.symtab.SymbolTable;
 
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Iterator;
 import java.util.List;
-import java.util.Stack;
 
 //TODO: 实验二: 实现 LR 语法分析驱动程序
 
@@ -21,8 +26,13 @@ import java.util.Stack;
 public class SyntaxAnalyzer {
     private final SymbolTable symbolTable;
     private final List<ActionObserver> observers = new ArrayList<>();
-    private LRTable lrTable;
-    private List<Token> tokenList = new ArrayList<>();
+    private ActionObserver shiftObserver = FusedObserver.NONE;
+    private ActionObserver reduceObserver = FusedObserver.NONE;
+    private ActionObserver unitReduceObserver = FusedObserver.NONE;
+    private ParseTable lrTable;
+    private UnitChains unitChains;
+    private Iterator<Token> tokens;
+    private TokenIterator positions;
 
 
 
@@ -38,6 +48,18 @@ public class SyntaxAnalyzer {
     public void registerObserver(ActionObserver observer) {
         observers.add(observer);
         observer.setSymbolTable(symbolTable);
+        observer.setSemanticStack(semanticStack);
+        fuseObservers();
+    }
+
+    /**
+     * 按动作把观察者分组并融合 (见 {@link FusedObserver}), 使各个通知点都只调用一个观察者.
+     * 忽略移入的观察者不参与移入的通知, 不需要单一产生式的观察者不参与规约链的通知
+     */
+    private void fuseObservers() {
+        shiftObserver = FusedObserver.fuse(observers.stream().filter(observer -> !observer.ignoresShift()).toList());
+        reduceObserver = FusedObserver.fuse(observers);
+        unitReduceObserver = FusedObserver.fuse(observers.stream().filter(ActionObserver::needsUnitReductions).toList());
     }
 
     /**
@@ -47,9 +69,7 @@ public class SyntaxAnalyzer {
      * @param currentToken  当前词法单元
      */
     public void callWhenInShift(Status currentStatus, Token currentToken) {
-        for (final var listener : observers) {
-            listener.whenShift(currentStatus, currentToken);
-        }
+        shiftObserver.whenShift(currentStatus, currentToken);
     }
 
     /**
@@ -59,9 +79,7 @@ public class SyntaxAnalyzer {
      * @param production    待规约的产生式
      */
     public void callWhenInReduce(Status currentStatus, Production production) {
-        for (final var listener : observers) {
-            listener.whenReduce(currentStatus, production);
-        }
+        reduceObserver.whenReduce(currentStatus, production);
     }
 
     /**
@@ -70,8 +88,25 @@ public class SyntaxAnalyzer {
      * @param currentStatus 当前状态
      */
     public void callWhenInAccept(Status currentStatus) {
-        for (final var listener : observers) {
-            listener.whenAccept(currentStatus);
+        reduceObserver.whenAccept(currentStatus);
+    }
+
+    /**
+     * 把单一产生式规约链上的各次规约报告给需要它们的观察者
+     *
+     * @param chain 规约链的编号
+     */
+    private void callWhenInUnitChain(int chain) {
+        if (unitReduceObserver == FusedObserver.NONE) {
+            return;
+        }
+
+        for (int step = unitChains.getStepBegin(chain); step < unitChains.getStepEnd(chain); step++) {
+            final var status = lrTable.getStatus(unitChains.getStepState(step));
+            final var production = lrTable.getProduction(unitChains.getStepProduction(step));
+            semanticStack.beginReduce(1);
+            unitReduceObserver.whenReduce(status, production);
+            semanticStack.endReduce();
         }
     }
 
@@ -81,21 +116,93 @@ public class SyntaxAnalyzer {
         // 需要注意的是, 在实现驱动程序的过程中, 你会需要面对只读取一个 token 而不能消耗它的情况,
         // 在自行设计的时候请加以考虑此种情况
 
-        for (Token token : tokens) {
-            tokenList.add(token);
-        }
+        loadTokens(tokens.iterator());
         // throw new NotImplementedException();
     }
 
+    /**
+     * 以迭代器的形式加载词法单元. 驱动程序只在移入时才会向前读取一个词法单元, 不会另外保存整个词法单元序列,
+     * 因此可以直接接上按需分析的词法分析器 (见 {@link cn.edu.hitsz.compiler.lexer.LexicalAnalyzer#tokenIterator()}),
+     * 使词法分析与语法分析交叠进行
+     *
+     * @param tokens 词法单元迭代器, 应以 EOF 结尾
+     */
+    public void loadTokens(Iterator<Token> tokens) {
+        this.tokens = tokens;
+        // 能报告位置的迭代器 (如词法分析器给出的) 还会提供每个词法单元的偏移, 用于错误信息
+        this.positions = tokens instanceof TokenIterator iterator ? iterator : null;
+    }
+
     public void loadLRTable(LRTable table) {
         // TODO: 加载 LR 分析表
         // 你可以自行选择要如何使用该表格:
         // 是直接对 LRTable 调用 getAction/getGoto, 抑或是直接将 initStatus 存起来使用
 
-        lrTable = table;
+        // 编译为稠密数组形式, 分析过程中只在整数状态编号上查表
+        loadLRTable(CompiledLRTable.compile(table));
         //throw new NotImplementedException();
     }
 
+    /**
+     * 加载已经编译好的分析表, 如压缩形式的 {@link CombLRTable}
+     *
+     * @param table 分析表
+     */
+    public void loadLRTable(ParseTable table) {
+        lrTable = table;
+        // 单一产生式规约链需要稠密形式的表才能预先算出, 其它形式的表按普通方式逐次规约
+        unitChains = table instanceof CompiledLRTable compiled ? compiled.getUnitChains() : null;
+    }
+
+    /**
+     * 开启恐慌模式的错误恢复. 开启后遇到语法错误不再抛出异常, 而是:
+     * <ol>
+     *     <li>记录一条 {@link ParseDiagnostic};</li>
+     *     <li>弹出状态, 直到某个状态在同步非终结符 (如 {@code S}) 上有 goto, 假装已经规约出了该非终结符;</li>
+     *     <li>跳过词法单元, 直到同步终结符 (如 {@code Semicolon}), 然后继续分析.</li>
+     * </ol>
+     * 第一次出错之后语法树已不完整, 驱动程序不再通知任何观察者 (包括 accept), 只继续寻找后面的语法错误.
+     * 每次恢复至多弹出整个状态栈并跳过若干词法单元, 总的开销与输入长度成正比.
+     *
+     * @param syncNonTerminal 同步非终结符
+     * @param syncToken       同步终结符
+     */
+    public void enableErrorRecovery(NonTerminal syncNonTerminal, TokenKind syncToken) {
+        this.syncNonTerminal = syncNonTerminal;
+        this.syncToken = syncToken;
+    }
+
+    /**
+     * @return 上一次分析中记录的语法错误, 未开启错误恢复时总为空
+     */
+    public List<ParseDiagnostic> getDiagnostics() {
+        return Collections.unmodifiableList(diagnostics);
+    }
+
+    private long offsetOfCurrent() {
+        return positions == null ? -1 : positions.getOffset();
+    }
+
+    private LineIndex lineIndex() {
+        return positions == null ? null : positions.getLineIndex();
+    }
+
+    /**
+     * @return 以同步非终结符为产生式头的某个产生式的编号, 用于查询该非终结符上的 goto; 未开启错误恢复时为 -1
+     */
+    private int findSyncProduction() {
+        if (syncNonTerminal == null) {
+            return -1;
+        }
+
+        for (int production = 0; production < lrTable.getProductionCount(); production++) {
+            if (lrTable.getProduction(production).head().equals(syncNonTerminal)) {
+                return production;
+            }
+        }
+        throw new RuntimeException("No production of sync non-terminal " + syncNonTerminal + " in the parse table");
+    }
+
     public void run() {
         // TODO: 实现驱动程序
         // 你需要根据上面的输入来实现 LR 语法分析的驱动程序
@@ -103,54 +210,143 @@ public class SyntaxAnalyzer {
         // 否则用于为实验二打分的产生式输出可能不会正常工作
         // System.out.println("Run");
 
-        int i = 0;
-        boolean isAccept = false;
-        symbolStack.push(new Symbol(Token.eof()));
-        statusStack.push(lrTable.getInit());
-        for (i = 0; i < tokenList.size() && !isAccept; ++i) {
-            Token currentToken = tokenList.get(i);
-            Status currentStatus = statusStack.peek();
-            Action action = lrTable.getAction(currentStatus, currentToken);
-
-            switch (action.getKind()) {
-                case Shift -> {
-                    callWhenInShift(action.getStatus(), currentToken);
-                    Status nextStatus = action.getStatus();
-                    symbolStack.push(new Symbol(currentToken));
-                    statusStack.push(nextStatus);
-                    // System.out.println("Shift: " + currentToken);
-                }
-                case Reduce -> {
-                    Production production = action.getProduction();
-                    callWhenInReduce(currentStatus, production);
-                    int cnt = production.body().size();
-                    while (cnt > 0) {
-                        symbolStack.pop();
-                        statusStack.pop();
-                        --cnt;
+        // 状态栈只保存状态编号; 语义值栈与它平行 (不含栈底的初始状态), 移入时压入词法单元本身
+        semanticStack.clear();
+        semanticStack.setLineIndex(positions == null ? null : positions.getLineIndex());
+        diagnostics.clear();
+        int top = 0;
+        statusStack[top] = lrTable.getInit();
+        // 当前向前看的词法单元, 只有移入时才会读取下一个
+        Token currentToken = tokens.next();
+        int currentCode = currentToken.getKind().getCode();
+        int tokenIndex = 0;
+        long currentOffset = offsetOfCurrent();
+
+        // 错误恢复: 同步非终结符的某个产生式, 未开启时为 -1
+        final int syncProduction = findSyncProduction();
+        // 第一次出错之后语义值已不可信, 不再通知观察者, 也不再维护语义值栈
+        boolean muted = false;
+        int lastRecoveryIndex = -1;
+        while (true) {
+            final int currentStatus = statusStack[top];
+            final int action = lrTable.getAction(currentStatus, currentCode);
+
+            switch (CompiledLRTable.kindOf(action)) {
+                case CompiledLRTable.SHIFT -> {
+                    final int nextStatus = CompiledLRTable.payloadOf(action);
+                    if (!muted) {
+                        if (shiftObserver != FusedObserver.NONE) {
+                            callWhenInShift(lrTable.getStatus(nextStatus), currentToken);
+                        }
+                        semanticStack.push(currentToken, currentOffset);
+                    }
+                    if (++top == statusStack.length) {
+                        statusStack = Arrays.copyOf(statusStack, top * 2);
+                    }
+                    statusStack[top] = nextStatus;
+                    // 移入之后词法单元序列必然还没结束 (至少还剩 EOF), 否则就是出错了
+                    if (!tokens.hasNext()) {
+                        throw new RuntimeException("Syntax error at %s: unexpected end of input after %s".formatted(
+                            ParseDiagnostic.describe(tokenIndex, currentOffset, lineIndex()), currentToken));
                     }
-                    symbolStack.push(new Symbol(production.head()));
-                    Status nextStatus = lrTable.getGoto(statusStack.peek(), production.head());
-                    statusStack.push(nextStatus);
-                    --i;
-                    // System.out.println("Reduce" + production);
+                    currentToken = tokens.next();
+                    currentCode = currentToken.getKind().getCode();
+                    currentOffset = offsetOfCurrent();
+                    tokenIndex++;
                 }
-                case Accept -> {
-                    isAccept = true;
-                    callWhenInAccept(currentStatus);
-                    // System.out.println("Accept");
+                case CompiledLRTable.REDUCE -> {
+                    final int production = CompiledLRTable.payloadOf(action);
+                    final int length = lrTable.getProductionLength(production);
+                    if (!muted) {
+                        semanticStack.beginReduce(length);
+                        callWhenInReduce(lrTable.getStatus(currentStatus), lrTable.getProduction(production));
+                        semanticStack.endReduce();
+                    }
+                    top -= length;
+                    final int belowStatus = statusStack[top];
+                    // 压缩的分析表在没有 goto 处也可能返回默认值, 因此用 hasGoto 判断
+                    if (!lrTable.hasGoto(belowStatus, production)) {
+                        throw new RuntimeException("Syntax error at %s: unexpected %s".formatted(
+                            ParseDiagnostic.describe(tokenIndex, currentOffset, lineIndex()), currentToken));
+                    }
+                    int nextStatus = lrTable.getGoto(belowStatus, production);
+                    // 紧接着的单一产生式规约不改变栈高, 直接换成规约链的终点状态
+                    final int chain = unitChains == null ? -1 : unitChains.find(belowStatus, production, currentCode);
+                    if (chain >= 0) {
+                        if (!muted) {
+                            callWhenInUnitChain(chain);
+                        }
+                        nextStatus = unitChains.getTarget(chain);
+                    }
+                    if (++top == statusStack.length) {
+                        statusStack = Arrays.copyOf(statusStack, top * 2);
+                    }
+                    statusStack[top] = nextStatus;
                 }
-                case Error -> {
-                    throw new RuntimeException("Error");
+                case CompiledLRTable.ACCEPT -> {
+                    if (!muted) {
+                        callWhenInAccept(lrTable.getStatus(currentStatus));
+                    }
+                    return;
                 }
+                default -> {
+                    if (syncProduction < 0) {
+                        throw new RuntimeException("Syntax error at %s: unexpected %s".formatted(
+                            ParseDiagnostic.describe(tokenIndex, currentOffset, lineIndex()), currentToken));
+                    }
 
-            }
+                    // 恐慌模式恢复
+                    muted = true;
+                    final int errorIndex = tokenIndex;
+                    final long errorOffset = currentOffset;
+                    final var errorToken = currentToken;
+                    int skipped = 0;
+
+                    // 上一次恢复之后一个词法单元都没能移入就又出错了: 丢弃当前词法单元以保证向前推进, 已到 EOF 时放弃
+                    if (errorIndex == lastRecoveryIndex) {
+                        if (currentToken.getKind() == TokenKind.eof()) {
+                            return;
+                        }
+                        currentToken = tokens.next();
+                        currentCode = currentToken.getKind().getCode();
+                        currentOffset = offsetOfCurrent();
+                        tokenIndex++;
+                        skipped++;
+                    }
 
+                    // 弹出状态, 直到某个状态在同步非终结符上有转移, 再假装已经规约出了该非终结符
+                    while (top >= 0 && !lrTable.hasGoto(statusStack[top], syncProduction)) {
+                        top--;
+                    }
+                    if (top < 0) {
+                        diagnostics.add(new ParseDiagnostic(errorIndex, errorOffset, errorToken, skipped, lineIndex()));
+                        return;
+                    }
+                    statusStack[top + 1] = lrTable.getGoto(statusStack[top], syncProduction);
+                    top++;
+
+                    // 跳过词法单元, 直到同步终结符或 EOF
+                    while (currentToken.getKind() != syncToken && currentToken.getKind() != TokenKind.eof()) {
+                        currentToken = tokens.next();
+                        currentCode = currentToken.getKind().getCode();
+                        currentOffset = offsetOfCurrent();
+                        tokenIndex++;
+                        skipped++;
+                    }
+
+                    diagnostics.add(new ParseDiagnostic(errorIndex, errorOffset, errorToken, skipped, lineIndex()));
+                    lastRecoveryIndex = tokenIndex;
+                }
+            }
         }
         // throw new NotImplementedException();
     }
 
-    private final Stack<Symbol> symbolStack = new Stack<>();
-    private final Stack<Status> statusStack = new Stack<>();
+    private int[] statusStack = new int[256];
+    private final SemanticStack semanticStack = new SemanticStack();
+
+    private NonTerminal syncNonTerminal = null;
+    private TokenKind syncToken = null;
+    private final List<ParseDiagnostic> diagnostics = new ArrayList<>();
 
 }
@@ -0,0 +1,305 @@
+package cn.edu.hitsz.compiler.parser.table;
+
+import cn.edu.hitsz.compiler.lexer.TokenKind;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * 预编译 LR 分析表的二进制格式
+ * <br>
+ * 从 CSV 读取分析表需要逐行切分, 逐格解析动作文本, 还要按文本查找产生式, 对于很短的源程序, 这往往占去了大部分运行时间.
+ * 该类把 {@link CompiledLRTable} 直接序列化为二进制文件, 加载时只需一次内存映射, 再把 action 与 goto 表整块读入 {@code int[]}.
+ * <br>
+ * 文件以大端序存放, 依次为:
+ * <ol>
+ *     <li>文件头: 魔数 {@link #MAGIC}, 格式版本 {@link #VERSION}, 语法文件的散列 ({@link #hashGrammar(String)}),
+ *     分析表来源的散列 (CSV 文件的内容 {@link #hashFiles(String...)}, 或构造方法与构造程序的版本 {@link #hashGenerator(TableGenerator.Method)});</li>
+ *     <li>状态数, 终结符数, 非终结符数, 产生式数;</li>
+ *     <li>各状态在原表中的序号;</li>
+ *     <li>各终结符的名字 (按列号顺序). 列号在加载时再按码点文件换算, 因此码点的改动不会使该文件失效;</li>
+ *     <li>各产生式: 序号, 产生式头的名字与列号, 产生式体中各符号的种类与名字;</li>
+ *     <li>action 表与 goto 表, 与 {@link CompiledLRTable} 中的编码一致.</li>
+ * </ol>
+ * 加载时会校验魔数, 版本, 语法散列与来源散列, 任何一项不符都会抛出异常, 调用者应当退回到从 CSV 或语法文件构造分析表.
+ * 来源散列使得 CSV 重新生成之后, 或是改用另一种方法构造之后 (状态编号可能不同), 旧的二进制文件不会被悄悄沿用.
+ * 字符串以 "字节数 + UTF-8 字节" 的形式存放.
+ */
+public final class BinaryTableFormat {
+    /**
+     * 文件开头的魔数, 即 ASCII 的 "LRTB"
+     */
+    public static final int MAGIC = 0x4C525442;
+
+    /**
+     * 格式版本, 格式有任何不兼容的改动时都应递增
+     */
+    public static final int VERSION = 2;
+
+    /**
+     * 计算语法文件的散列, 用于判断预编译的分析表是否与当前语法一致. 行尾的差异 (CRLF 与 LF) 不影响结果
+     * <br>
+     * 这里只需要发现语法文件的改动, 不需要抵御刻意构造的冲突, 因此使用 64 位的 FNV-1a, 避免加载密码学散列的开销
+     *
+     * @param grammarPath 语法文件路径
+     * @return 散列值
+     */
+    public static long hashGrammar(String grammarPath) {
+        return hashFiles(grammarPath);
+    }
+
+    /**
+     * 依次计算若干文件内容的散列, 规则与 {@link #hashGrammar(String)} 相同, 只有一个文件时两者的结果相等.
+     * 文件之间以一个 NUL 字节分隔 (文本文件中不会出现), 以免内容在文件之间挪动后散列不变
+     *
+     * @param paths 文件路径
+     * @return 散列值
+     */
+    public static long hashFiles(String... paths) {
+        long hash = FNV_OFFSET_BASIS;
+        for (int i = 0; i < paths.length; i++) {
+            final byte[] bytes;
+            try {
+                bytes = Files.readAllBytes(Paths.get(paths[i]));
+            } catch (IOException e) {
+                throw new RuntimeException("IO Exception on " + paths[i], e);
+            }
+
+            if (i > 0) {
+                // 相当于处理一个 NUL 字节
+                hash *= FNV_PRIME;
+            }
+            for (final byte b : bytes) {
+                if (b == '\r') {
+                    continue;
+                }
+                hash ^= b & 0xFF;
+                hash *= FNV_PRIME;
+            }
+        }
+        return hash;
+    }
+
+    /**
+     * 计算由 {@link TableGenerator} 构造的分析表的来源散列: 同一文法下, 构造方法与构造程序的版本决定了分析表的内容
+     *
+     * @param method 分析表的构造方法
+     * @return 散列值
+     */
+    public static long hashGenerator(TableGenerator.Method method) {
+        long hash = FNV_OFFSET_BASIS;
+        for (final byte b : "TableGenerator/%s/%d".formatted(method, TableGenerator.VERSION).getBytes(StandardCharsets.UTF_8)) {
+            hash ^= b & 0xFF;
+            hash *= FNV_PRIME;
+        }
+        return hash;
+    }
+
+    /**
+     * 将分析表写入二进制文件
+     *
+     * @param table       编译后的分析表
+     * @param grammarHash 构造该表所用的语法文件的散列
+     * @param sourceHash  分析表来源的散列
+     * @param path        输出文件路径
+     */
+    public static void write(CompiledLRTable table, long grammarHash, long sourceHash, String path) {
+        final int stateCount = table.getStateCount();
+        final int terminalCount = table.getTerminalCount();
+        final int nonTerminalCount = table.getNonTerminalCount();
+        final var productions = table.getProductions();
+
+        // 由码点反查表还原出各列的终结符
+        final var terminalNames = new String[terminalCount];
+        final var columnOfCode = table.getColumnOfCode();
+        for (int index = 0; index < columnOfCode.length; index++) {
+            if (columnOfCode[index] >= 0) {
+                terminalNames[columnOfCode[index]] = TokenKind.fromCode(index - 1).getIdentifier();
+            }
+        }
+
+        final var out = new Output();
+        out.putInt(MAGIC).putInt(VERSION).putLong(grammarHash).putLong(sourceHash);
+        out.putInt(stateCount).putInt(terminalCount).putInt(nonTerminalCount).putInt(productions.length);
+
+        for (final var status : table.getStatuses()) {
+            out.putInt(status.index());
+        }
+        for (final var name : terminalNames) {
+            out.putString(name);
+        }
+        for (int id = 0; id < productions.length; id++) {
+            final var production = productions[id];
+            out.putInt(production.index());
+            out.putString(production.head().getTermName()).putInt(table.getProductionHeads()[id]);
+            out.putInt(production.body().size());
+            for (final var term : production.body()) {
+                out.putInt(term instanceof TokenKind ? TERMINAL : NON_TERMINAL).putString(term.getTermName());
+            }
+        }
+
+        for (int state = 0; state < stateCount; state++) {
+            for (int column = 0; column < terminalCount; column++) {
+                out.putInt(table.getActionAt(state, column));
+            }
+        }
+        for (int state = 0; state < stateCount; state++) {
+            for (int column = 0; column < nonTerminalCount; column++) {
+                out.putInt(table.getGotoAt(state, column));
+            }
+        }
+
+        try {
+            Files.write(Paths.get(path), out.toByteArray());
+        } catch (IOException e) {
+            throw new RuntimeException("IO Exception on " + path, e);
+        }
+    }
+
+    /**
+     * 以内存映射的方式加载二进制分析表
+     *
+     * @param path         文件路径
+     * @param grammarHash  当前语法文件的散列
+     * @param sourceHashes 可以接受的分析表来源的散列, 文件的来源散列须为其中之一
+     * @return 编译后的分析表
+     * @throws RuntimeException 文件不是该格式, 版本不符, 或是由其它语法或来源构造的
+     */
+    public static CompiledLRTable read(String path, long grammarHash, long... sourceHashes) {
+        try (final var channel = FileChannel.open(Paths.get(path), StandardOpenOption.READ)) {
+            return read(channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size()), grammarHash, sourceHashes, path);
+        } catch (IOException e) {
+            throw new RuntimeException("IO Exception on " + path, e);
+        }
+    }
+
+    private static CompiledLRTable read(ByteBuffer in, long grammarHash, long[] sourceHashes, String path) {
+        if (in.remaining() < HEADER_SIZE || in.getInt() != MAGIC) {
+            throw new RuntimeException("Not a binary LR table: " + path);
+        }
+        final int version = in.getInt();
+        if (version != VERSION) {
+            throw new RuntimeException("Unsupported binary LR table version %d in %s".formatted(version, path));
+        }
+        if (in.getLong() != grammarHash) {
+            throw new RuntimeException("Binary LR table " + path + " was built from another grammar");
+        }
+        final long sourceHash = in.getLong();
+        if (Arrays.stream(sourceHashes).noneMatch(hash -> hash == sourceHash)) {
+            throw new RuntimeException("Binary LR table " + path + " was built from another table source");
+        }
+
+        final int stateCount = in.getInt();
+        final int terminalCount = in.getInt();
+        final int nonTerminalCount = in.getInt();
+        final int productionCount = in.getInt();
+
+        final var statuses = new Status[stateCount];
+        for (int state = 0; state < stateCount; state++) {
+            statuses[state] = Status.create(in.getInt());
+        }
+
+        final var terminalCodes = new int[terminalCount];
+        int maxCode = -1;
+        for (int column = 0; column < terminalCount; column++) {
+            terminalCodes[column] = TokenKind.fromString(getString(in)).getCode();
+            maxCode = Math.max(maxCode, terminalCodes[column]);
+        }
+        final var columnOfCode = new int[maxCode + 2];
+        Arrays.fill(columnOfCode, -1);
+        for (int column = 0; column < terminalCount; column++) {
+            columnOfCode[terminalCodes[column] + 1] = column;
+        }
+
+        final Map<String, NonTerminal> nonTerminals = new HashMap<>();
+        final var productions = new Production[productionCount];
+        final var productionHeads = new int[productionCount];
+        final var productionLengths = new int[productionCount];
+        for (int id = 0; id < productionCount; id++) {
+            final int index = in.getInt();
+            final var head = nonTerminals.computeIfAbsent(getString(in), NonTerminal::new);
+            productionHeads[id] = in.getInt();
+            final int length = in.getInt();
+            final var body = new ArrayList<Term>(length);
+            for (int i = 0; i < length; i++) {
+                final int kind = in.getInt();
+                final var name = getString(in);
+                body.add(kind == TERMINAL ? TokenKind.fromString(name) : nonTerminals.computeIfAbsent(name, NonTerminal::new));
+            }
+            productions[id] = new Production(index, head, body);
+            productionLengths[id] = length;
+        }
+
+        final var actions = new int[stateCount * terminalCount];
+        in.asIntBuffer().get(actions);
+        in.position(in.position() + actions.length * Integer.BYTES);
+        final var gotos = new int[stateCount * nonTerminalCount];
+        in.asIntBuffer().get(gotos);
+
+        return new CompiledLRTable(
+            statuses, productions, columnOfCode, terminalCount, nonTerminalCount,
+            actions, gotos, productionHeads, productionLengths
+        );
+    }
+
+    private static String getString(ByteBuffer in) {
+        final var bytes = new byte[in.getInt()];
+        in.get(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    /**
+     * 可增长的大端序输出缓冲区
+     */
+    private static class Output {
+        Output putInt(int value) {
+            ensure(Integer.BYTES).putInt(value);
+            return this;
+        }
+
+        Output putLong(long value) {
+            ensure(Long.BYTES).putLong(value);
+            return this;
+        }
+
+        Output putString(String text) {
+            final var bytes = text.getBytes(StandardCharsets.UTF_8);
+            putInt(bytes.length);
+            ensure(bytes.length).put(bytes);
+            return this;
+        }
+
+        byte[] toByteArray() {
+            return Arrays.copyOf(buffer.array(), buffer.position());
+        }
+
+        private ByteBuffer ensure(int bytes) {
+            if (buffer.remaining() < bytes) {
+                final var larger = ByteBuffer.allocate(Math.max(buffer.capacity() * 2, buffer.position() + bytes));
+                larger.put(buffer.array(), 0, buffer.position());
+                buffer = larger;
+            }
+            return buffer;
+        }
+
+        private ByteBuffer buffer = ByteBuffer.allocate(1 << 12);
+    }
+
+    private static final long FNV_OFFSET_BASIS = 0xCBF29CE484222325L;
+    private static final long FNV_PRIME = 0x100000001B3L;
+    private static final int HEADER_SIZE = Integer.BYTES * 2 + Long.BYTES * 2;
+    private static final int TERMINAL = 0;
+    private static final int NON_TERMINAL = 1;
+
+    private BinaryTableFormat() {
+    }
+}
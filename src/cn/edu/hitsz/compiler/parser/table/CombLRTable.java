@@ -0,0 +1,304 @@
+package cn.edu.hitsz.compiler.parser.table;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.function.IntPredicate;
+
+/**
+ * 以行位移 (comb) 方式压缩的 LR 分析表
+ * <br>
+ * 文法变大以后, 稠密的 action 表中绝大多数表项都是错误动作. 与 yacc 的做法相同, 该类分两步压缩:
+ * <ol>
+ *     <li>默认规约: 每个状态中出现最多的规约动作成为该状态的默认动作, 与它相同的表项以及错误表项都不再单独存放.
+ *     这会把一部分错误推迟到若干次规约之后才发现, 但不会移入任何错误的词法单元;</li>
+ *     <li>行位移: 剩下的稀疏行被错开叠放在同一个一维数组 {@code next} 中, 每行有一个起点 {@code base},
+ *     平行的 {@code check} 数组记录每个位置属于哪一行.</li>
+ * </ol>
+ * 查表时先算出 {@code base[行] + 列}, 若该位置的 check 是本行则取 next, 否则取本行的默认值, 仍然是 O(1) 的.
+ * <br>
+ * goto 表按非终结符分行, 以状态为列, 同样压缩; 其默认值是该非终结符最常见的目标状态.
+ * 规约之后的查询不会遇到没有转移的 goto 表项, 因此 {@link #getGoto(int, int)} 把它们也一并归入默认值;
+ * 等于默认值的转移另外以只有 check 的叠放记录下来, 供 {@link #hasGoto(int, int)} 区分有无转移.
+ * <br>
+ * 动作的编码与 {@link CompiledLRTable} 一致.
+ */
+public final class CombLRTable implements ParseTable {
+    /**
+     * 压缩 LR 分析表
+     *
+     * @param table LR 分析表
+     * @return 压缩后的分析表
+     */
+    public static CombLRTable compile(LRTable table) {
+        return compress(CompiledLRTable.compile(table));
+    }
+
+    /**
+     * 压缩稠密形式的分析表, 状态与产生式的编号保持不变
+     *
+     * @param dense 稠密形式的分析表
+     * @return 压缩后的分析表
+     */
+    public static CombLRTable compress(CompiledLRTable dense) {
+        final int stateCount = dense.getStateCount();
+        final int terminalCount = dense.getTerminalCount();
+        final int nonTerminalCount = dense.getNonTerminalCount();
+
+        // action 表: 每个状态一行, 先选出默认规约, 再把其余的非错误表项叠放
+        final var actionDefaults = new int[stateCount];
+        final var actionRows = new int[stateCount][];
+        for (int state = 0; state < stateCount; state++) {
+            final var row = new int[terminalCount];
+            for (int column = 0; column < terminalCount; column++) {
+                row[column] = dense.getActionAt(state, column);
+            }
+
+            final int defaultAction = mostFrequent(
+                row, action -> CompiledLRTable.kindOf(action) == CompiledLRTable.REDUCE, CompiledLRTable.ERROR
+            );
+            actionDefaults[state] = defaultAction;
+            for (int column = 0; column < terminalCount; column++) {
+                if (row[column] == defaultAction) {
+                    row[column] = CompiledLRTable.ERROR;
+                }
+            }
+            actionRows[state] = row;
+        }
+        final var actions = Comb.pack(actionRows, CompiledLRTable.ERROR);
+
+        // goto 表: 每个非终结符一行, 列为状态
+        final var gotoDefaults = new int[nonTerminalCount];
+        final var gotoRows = new int[nonTerminalCount][];
+        // 等于默认值的转移, 1 表示存在
+        final var defaultGotoRows = new int[nonTerminalCount][];
+        for (int column = 0; column < nonTerminalCount; column++) {
+            final var row = new int[stateCount];
+            for (int state = 0; state < stateCount; state++) {
+                row[state] = dense.getGotoAt(state, column);
+            }
+
+            final int defaultGoto = mostFrequent(row, target -> target >= 0, -1);
+            gotoDefaults[column] = defaultGoto;
+            final var defaultRow = new int[stateCount];
+            for (int state = 0; state < stateCount; state++) {
+                defaultRow[state] = row[state] == defaultGoto && defaultGoto >= 0 ? 1 : -1;
+                if (row[state] == defaultGoto) {
+                    row[state] = -1;
+                }
+            }
+            gotoRows[column] = row;
+            defaultGotoRows[column] = defaultRow;
+        }
+        final var gotos = Comb.pack(gotoRows, -1);
+        final var defaultGotos = Comb.pack(defaultGotoRows, -1);
+
+        return new CombLRTable(dense, actionDefaults, actions, gotoDefaults, gotos, defaultGotos);
+    }
+
+    @Override
+    public int getInit() {
+        return 0;
+    }
+
+    @Override
+    public int getAction(int state, int terminalCode) {
+        final int index = terminalCode + 1;
+        if (index < 0 || index >= columnOfCode.length || columnOfCode[index] < 0) {
+            return CompiledLRTable.ERROR;
+        }
+
+        final int slot = actionBase[state] + columnOfCode[index];
+        return actionCheck[slot] == state ? actionNext[slot] : actionDefaults[state];
+    }
+
+    @Override
+    public int getGoto(int state, int production) {
+        final int head = productionHeads[production];
+        final int slot = gotoBase[head] + state;
+        return gotoCheck[slot] == head ? gotoNext[slot] : gotoDefaults[head];
+    }
+
+    @Override
+    public boolean hasGoto(int state, int production) {
+        final int head = productionHeads[production];
+        return gotoCheck[gotoBase[head] + state] == head || defaultGotoCheck[defaultGotoBase[head] + state] == head;
+    }
+
+    @Override
+    public int getProductionLength(int production) {
+        return productionLengths[production];
+    }
+
+    @Override
+    public Status getStatus(int state) {
+        return statuses[state];
+    }
+
+    @Override
+    public Production getProduction(int production) {
+        return productions[production];
+    }
+
+    @Override
+    public int getStateCount() {
+        return statuses.length;
+    }
+
+    @Override
+    public int getProductionCount() {
+        return productions.length;
+    }
+
+    /**
+     * @return 压缩后各个整数数组所占的字节数之和 (不含状态与产生式对象), 用于评估压缩效果
+     */
+    public long getFootprint() {
+        final long ints = (long) columnOfCode.length
+            + actionDefaults.length + actionBase.length + actionNext.length + actionCheck.length
+            + gotoDefaults.length + gotoBase.length + gotoNext.length + gotoCheck.length
+            + defaultGotoBase.length + defaultGotoCheck.length
+            + productionHeads.length + productionLengths.length;
+        return ints * Integer.BYTES;
+    }
+
+    /**
+     * 找出一行中满足条件的值里出现次数最多的一个, 次数相同时取较小的值, 使结果与遍历顺序无关
+     *
+     * @param row       一行表项
+     * @param candidate 可以作为默认值的表项
+     * @param none      没有满足条件的表项时的返回值
+     * @return 出现最多的值
+     */
+    private static int mostFrequent(int[] row, IntPredicate candidate, int none) {
+        final Map<Integer, Integer> counts = new HashMap<>();
+        int best = none;
+        int bestCount = 0;
+        for (final int value : row) {
+            if (!candidate.test(value)) {
+                continue;
+            }
+            final int count = counts.merge(value, 1, Integer::sum);
+            if (count > bestCount || (count == bestCount && value < best)) {
+                best = value;
+                bestCount = count;
+            }
+        }
+        return best;
+    }
+
+    /**
+     * 行位移压缩的叠放过程
+     */
+    private record Comb(int[] base, int[] next, int[] check) {
+        /**
+         * 按非空表项从多到少的顺序, 为每行找到最小的起点, 使它的非空表项都落在空位上
+         *
+         * @param rows  各行, 值为 {@code empty} 的表项视为空
+         * @param empty 空表项的值
+         * @return 叠放结果, check 中 -1 表示空位
+         */
+        static Comb pack(int[][] rows, int empty) {
+            final int width = rows.length == 0 ? 0 : rows[0].length;
+            final var order = new Integer[rows.length];
+            final var counts = new int[rows.length];
+            for (int row = 0; row < rows.length; row++) {
+                order[row] = row;
+                for (final int value : rows[row]) {
+                    if (value != empty) {
+                        counts[row]++;
+                    }
+                }
+            }
+            Arrays.sort(order, (a, b) -> counts[a] != counts[b] ? Integer.compare(counts[b], counts[a]) : Integer.compare(a, b));
+
+            // 叠放区的长度至多为所有非空表项数加一行的宽度; 多留出一行宽度, 使查询任意列都不会越界
+            int total = 0;
+            for (final int count : counts) {
+                total += count;
+            }
+            final var next = new int[total + width];
+            final var check = new int[total + width];
+            Arrays.fill(check, -1);
+            final var base = new int[rows.length];
+
+            int used = 0;
+            for (final int row : order) {
+                if (counts[row] == 0) {
+                    base[row] = 0;
+                    continue;
+                }
+
+                final var values = rows[row];
+                int candidate = 0;
+                while (!fits(values, empty, check, candidate)) {
+                    candidate++;
+                }
+
+                base[row] = candidate;
+                for (int column = 0; column < width; column++) {
+                    if (values[column] != empty) {
+                        next[candidate + column] = values[column];
+                        check[candidate + column] = row;
+                    }
+                }
+                used = Math.max(used, candidate + width);
+            }
+
+            // 截去末尾未用的部分, 仍保证 base + 列 不越界
+            final int length = Math.max(used, width);
+            return new Comb(base, Arrays.copyOf(next, length), Arrays.copyOf(check, length));
+        }
+
+        private static boolean fits(int[] values, int empty, int[] check, int base) {
+            for (int column = 0; column < values.length; column++) {
+                if (values[column] != empty && check[base + column] != -1) {
+                    return false;
+                }
+            }
+            return true;
+        }
+    }
+
+    private CombLRTable(
+        CompiledLRTable dense, int[] actionDefaults, Comb actions, int[] gotoDefaults, Comb gotos, Comb defaultGotos
+    ) {
+        this.statuses = dense.getStatuses();
+        this.productions = dense.getProductions();
+        this.columnOfCode = dense.getColumnOfCode();
+        this.productionHeads = dense.getProductionHeads();
+        this.productionLengths = dense.getProductionLengths();
+        this.actionDefaults = actionDefaults;
+        this.actionBase = actions.base();
+        this.actionNext = actions.next();
+        this.actionCheck = actions.check();
+        this.gotoDefaults = gotoDefaults;
+        this.gotoBase = gotos.base();
+        this.gotoNext = gotos.next();
+        this.gotoCheck = gotos.check();
+        this.defaultGotoBase = defaultGotos.base();
+        this.defaultGotoCheck = defaultGotos.check();
+    }
+
+    private final Status[] statuses;
+    private final Production[] productions;
+    private final int[] columnOfCode;
+    private final int[] productionHeads;
+    private final int[] productionLengths;
+
+    private final int[] actionDefaults;
+    private final int[] actionBase;
+    private final int[] actionNext;
+    private final int[] actionCheck;
+
+    private final int[] gotoDefaults;
+    private final int[] gotoBase;
+    private final int[] gotoNext;
+    private final int[] gotoCheck;
+
+    /**
+     * 等于默认值的 goto 转移, 只需要 base 与 check
+     */
+    private final int[] defaultGotoBase;
+    private final int[] defaultGotoCheck;
+}
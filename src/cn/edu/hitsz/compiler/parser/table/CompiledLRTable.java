@@ -0,0 +1,317 @@
+package cn.edu.hitsz.compiler.parser.table;
+
+import cn.edu.hitsz.compiler.lexer.TokenKind;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * 编译成稠密数组形式的 LR 分析表
+ * <br>
+ * {@link LRTable} 中的每个状态用 {@code HashMap} 保存 action 与 goto, 每次查表都要对终结符或非终结符的名字求散列.
+ * 该类把状态, 终结符, 非终结符与产生式都编号为从 0 开始的稠密下标, 再把 action 与 goto 展开为按 {@code [状态][列]}
+ * 行优先存放的 {@code int[]}, 驱动程序因而只需要在基本类型的状态编号上做数组访问.
+ * <br>
+ * action 表的每一项都是一个编码后的整数: 低 2 位为动作类型 ({@link #ERROR}, {@link #SHIFT}, {@link #REDUCE}, {@link #ACCEPT}),
+ * 其余位为载荷, 移入时是目标状态的编号, 规约时是产生式的编号. 错误动作编码为 0, 因此空白的表项不需要另外填充.
+ * goto 表的每一项是目标状态的编号, 没有转移时为 -1.
+ * <br>
+ * 终结符的列号由词法单元类型的码点 ({@link TokenKind#getCode()}) 经一张反查数组得到, 不涉及任何散列.
+ * 为了通知观察者, 该类仍然保留了编号到 {@link Status} 与 {@link Production} 对象的映射.
+ */
+public final class CompiledLRTable implements ParseTable {
+    //============================== 动作编码 ==============================
+    public static final int ERROR = 0;
+    public static final int SHIFT = 1;
+    public static final int REDUCE = 2;
+    public static final int ACCEPT = 3;
+
+    /**
+     * @param action 编码后的动作
+     * @return 动作类型
+     */
+    public static int kindOf(int action) {
+        return action & KIND_MASK;
+    }
+
+    /**
+     * @param action 编码后的动作
+     * @return 动作的载荷, 移入时为目标状态编号, 规约时为产生式编号
+     */
+    public static int payloadOf(int action) {
+        return action >>> KIND_BITS;
+    }
+
+    /**
+     * 编译 LR 分析表
+     *
+     * @param table LR 分析表
+     * @return 编译后的分析表, 起始状态的编号为 0
+     */
+    public static CompiledLRTable compile(LRTable table) {
+        final var statuses = table.getStatusInIndexOrder();
+        final var terminals = table.getTerminals();
+        final var nonTerminals = table.getNonTerminals();
+
+        // 状态按其在表中的先后顺序编号; 表中的状态序号未必连续, 因此另建反查表
+        final Map<Status, Integer> stateIds = new HashMap<>();
+        for (int id = 0; id < statuses.size(); id++) {
+            stateIds.put(statuses.get(id), id);
+        }
+
+        final Map<NonTerminal, Integer> nonTerminalIds = new HashMap<>();
+        for (int column = 0; column < nonTerminals.size(); column++) {
+            nonTerminalIds.put(nonTerminals.get(column), column);
+        }
+
+        int maxCode = -1;
+        for (final var terminal : terminals) {
+            maxCode = Math.max(maxCode, terminal.getCode());
+        }
+        final var columnOfCode = new int[maxCode + 2];
+        Arrays.fill(columnOfCode, -1);
+        for (int column = 0; column < terminals.size(); column++) {
+            columnOfCode[terminals.get(column).getCode() + 1] = column;
+        }
+
+        final int stateCount = statuses.size();
+        final int terminalCount = terminals.size();
+        final int nonTerminalCount = nonTerminals.size();
+        final var actions = new int[stateCount * terminalCount];
+        final var gotos = new int[stateCount * nonTerminalCount];
+        Arrays.fill(gotos, -1);
+
+        // 产生式按其第一次出现在 action 表中的顺序编号
+        final List<Production> productions = new ArrayList<>();
+        final Map<Production, Integer> productionIds = new HashMap<>();
+
+        for (int state = 0; state < stateCount; state++) {
+            final var status = statuses.get(state);
+
+            for (int column = 0; column < terminalCount; column++) {
+                final var action = status.getAction(terminals.get(column));
+                actions[state * terminalCount + column] = switch (action.getKind()) {
+                    case Shift -> encode(SHIFT, stateIds.get(action.getStatus()));
+                    case Reduce -> encode(REDUCE, productionIds.computeIfAbsent(action.getProduction(), production -> {
+                        productions.add(production);
+                        return productions.size() - 1;
+                    }));
+                    case Accept -> encode(ACCEPT, 0);
+                    case Error -> ERROR;
+                };
+            }
+
+            for (int column = 0; column < nonTerminalCount; column++) {
+                final var target = status.getGoto(nonTerminals.get(column));
+                if (!target.isError()) {
+                    gotos[state * nonTerminalCount + column] = stateIds.get(target);
+                }
+            }
+        }
+
+        final var productionHeads = new int[productions.size()];
+        final var productionLengths = new int[productions.size()];
+        for (int id = 0; id < productions.size(); id++) {
+            final var production = productions.get(id);
+            final var head = nonTerminalIds.get(production.head());
+            if (head == null) {
+                throw new RuntimeException("Head of production is not in the goto table: " + production);
+            }
+            productionHeads[id] = head;
+            productionLengths[id] = production.body().size();
+        }
+
+        return new CompiledLRTable(
+            statuses.toArray(new Status[0]), productions.toArray(new Production[0]),
+            columnOfCode, terminalCount, nonTerminalCount,
+            actions, gotos, productionHeads, productionLengths
+        );
+    }
+
+    /**
+     * @return 起始状态的编号
+     */
+    @Override
+    public int getInit() {
+        return 0;
+    }
+
+    /**
+     * @param state        当前状态的编号
+     * @param terminalCode 当前词法单元类型的码点
+     * @return 编码后的动作, 表中没有该终结符时为 {@link #ERROR}
+     */
+    @Override
+    public int getAction(int state, int terminalCode) {
+        final int index = terminalCode + 1;
+        if (index < 0 || index >= columnOfCode.length) {
+            return ERROR;
+        }
+
+        final int column = columnOfCode[index];
+        return column < 0 ? ERROR : actions[state * terminalCount + column];
+    }
+
+    /**
+     * @param state      当前状态的编号
+     * @param production 规约所用的产生式的编号
+     * @return 规约后应转移到的状态的编号, 没有转移时为 -1
+     */
+    @Override
+    public int getGoto(int state, int production) {
+        return gotos[state * nonTerminalCount + productionHeads[production]];
+    }
+
+    @Override
+    public boolean hasGoto(int state, int production) {
+        return getGoto(state, production) >= 0;
+    }
+
+    /**
+     * @param production 产生式的编号
+     * @return 产生式体的长度, 即规约时需要弹出的状态数
+     */
+    @Override
+    public int getProductionLength(int production) {
+        return productionLengths[production];
+    }
+
+    /**
+     * @param state 状态的编号
+     * @return 对应的状态对象
+     */
+    @Override
+    public Status getStatus(int state) {
+        return statuses[state];
+    }
+
+    /**
+     * @param production 产生式的编号
+     * @return 对应的产生式对象
+     */
+    @Override
+    public Production getProduction(int production) {
+        return productions[production];
+    }
+
+    /**
+     * @return 状态的个数
+     */
+    @Override
+    public int getStateCount() {
+        return statuses.length;
+    }
+
+    /**
+     * @return 产生式的个数
+     */
+    @Override
+    public int getProductionCount() {
+        return productions.length;
+    }
+
+    /**
+     * 该表的单一产生式规约链, 在第一次使用时构造. 分析表本身不可变, 多个驱动程序可以在不同线程中共享同一张表
+     *
+     * @return 单一产生式规约链
+     */
+    public UnitChains getUnitChains() {
+        // 与 String.hashCode 相同的单次检查: 并发时至多重复构造几次, UnitChains 的字段都是 final 的, 总能被安全地看到
+        var chains = unitChains;
+        if (chains == null) {
+            chains = UnitChains.of(this);
+            unitChains = chains;
+        }
+        return chains;
+    }
+
+    //============================== 供压缩使用的原始数据 ==============================
+
+    int getTerminalCount() {
+        return terminalCount;
+    }
+
+    int getNonTerminalCount() {
+        return nonTerminalCount;
+    }
+
+    int[] getColumnOfCode() {
+        return columnOfCode;
+    }
+
+    /**
+     * @param state  状态的编号
+     * @param column 终结符的列号
+     * @return 编码后的动作
+     */
+    int getActionAt(int state, int column) {
+        return actions[state * terminalCount + column];
+    }
+
+    /**
+     * @param state  状态的编号
+     * @param column 非终结符的列号
+     * @return 目标状态的编号, 没有转移时为 -1
+     */
+    int getGotoAt(int state, int column) {
+        return gotos[state * nonTerminalCount + column];
+    }
+
+    Status[] getStatuses() {
+        return statuses;
+    }
+
+    Production[] getProductions() {
+        return productions;
+    }
+
+    int[] getProductionHeads() {
+        return productionHeads;
+    }
+
+    int[] getProductionLengths() {
+        return productionLengths;
+    }
+
+    static int encode(int kind, int payload) {
+        return payload << KIND_BITS | kind;
+    }
+
+    private static final int KIND_BITS = 2;
+    private static final int KIND_MASK = (1 << KIND_BITS) - 1;
+
+    CompiledLRTable(
+        Status[] statuses, Production[] productions,
+        int[] columnOfCode, int terminalCount, int nonTerminalCount,
+        int[] actions, int[] gotos, int[] productionHeads, int[] productionLengths
+    ) {
+        this.statuses = statuses;
+        this.productions = productions;
+        this.columnOfCode = columnOfCode;
+        this.terminalCount = terminalCount;
+        this.nonTerminalCount = nonTerminalCount;
+        this.actions = actions;
+        this.gotos = gotos;
+        this.productionHeads = productionHeads;
+        this.productionLengths = productionLengths;
+    }
+
+    private final Status[] statuses;
+    private final Production[] productions;
+
+    /**
+     * 终结符列号的反查表, 下标为码点 + 1 (EOF 的码点为 -1), 不在表中的终结符处为 -1
+     */
+    private final int[] columnOfCode;
+    private final int terminalCount;
+    private final int nonTerminalCount;
+
+    private final int[] actions;
+    private final int[] gotos;
+    private final int[] productionHeads;
+    private final int[] productionLengths;
+    private UnitChains unitChains;
+}
@@ -51,15 +51,14 @@ public class GrammarInfo {
     }
 
     // 为了防止有人看不懂, 就不用枚举定义单例了
-    // 顺手写个懒加载
-    private static GrammarInfo instance = null;
+    // 懒加载放在持有类的静态初始化中, 由类加载保证只构造一次, 多个线程同时编译时也是安全的.
+    // 读取语法文件需要先加载 TokenKind, 因此不能在 GrammarInfo 类初始化时就读取
+    private static class Holder {
+        private static final GrammarInfo instance = new GrammarInfo();
+    }
 
     private static GrammarInfo getInstance() {
-        if (instance == null) {
-            instance = new GrammarInfo();
-        }
-
-        return instance;
+        return Holder.instance;
     }
 
     public static Map<String, NonTerminal> getNonTerminals() {
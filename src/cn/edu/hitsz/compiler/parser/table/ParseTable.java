@@ -0,0 +1,69 @@
+package cn.edu.hitsz.compiler.parser.table;
+
+/**
+ * 供 LR 驱动程序使用的分析表
+ * <br>
+ * 状态与产生式都以从 0 开始的稠密编号表示, 动作按 {@link CompiledLRTable} 中的方式编码为整数,
+ * 不同的实现只在表的存储方式上有所区别.
+ *
+ * @see CompiledLRTable 稠密数组形式的分析表
+ * @see CombLRTable 行位移压缩形式的分析表
+ */
+public interface ParseTable {
+    /**
+     * @return 起始状态的编号
+     */
+    int getInit();
+
+    /**
+     * @param state        当前状态的编号
+     * @param terminalCode 当前词法单元类型的码点
+     * @return 编码后的动作, 见 {@link CompiledLRTable#kindOf(int)} 与 {@link CompiledLRTable#payloadOf(int)}
+     */
+    int getAction(int state, int terminalCode);
+
+    /**
+     * 只应在规约之后查询: 此时转移必然存在. 对于没有转移的表项, 压缩形式的实现可能返回默认的目标状态而不是 -1,
+     * 需要判断转移是否存在时应使用 {@link #hasGoto(int, int)}
+     *
+     * @param state      规约后栈顶状态的编号
+     * @param production 规约所用的产生式的编号
+     * @return 应转移到的状态的编号, 没有转移时为 -1 或某个默认的状态
+     */
+    int getGoto(int state, int production);
+
+    /**
+     * @param state      状态的编号
+     * @param production 产生式的编号
+     * @return 状态 {@code state} 在该产生式头部的非终结符上是否有转移, 供错误恢复等不经过规约就查询 goto 的场合使用
+     */
+    boolean hasGoto(int state, int production);
+
+    /**
+     * @param production 产生式的编号
+     * @return 产生式体的长度, 即规约时需要弹出的状态数
+     */
+    int getProductionLength(int production);
+
+    /**
+     * @param state 状态的编号
+     * @return 对应的状态对象, 用于通知观察者
+     */
+    Status getStatus(int state);
+
+    /**
+     * @param production 产生式的编号
+     * @return 对应的产生式对象, 用于通知观察者
+     */
+    Production getProduction(int production);
+
+    /**
+     * @return 状态的个数
+     */
+    int getStateCount();
+
+    /**
+     * @return 产生式的个数, 产生式的编号为 0 到该值减一
+     */
+    int getProductionCount();
+}
@@ -0,0 +1,92 @@
+package cn.edu.hitsz.compiler.parser.table;
+
+import cn.edu.hitsz.compiler.utils.FilePathConfig;
+
+import java.io.IOException;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.FileAlreadyExistsException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+
+/**
+ * {@link TableGenerator} 构造结果的磁盘缓存
+ * <br>
+ * 从语法文件构造分析表需要求 FIRST/FOLLOW, 构造项目集族并填表, 而语法文件与码点文件在多次编译之间通常不变.
+ * 该类把构造出的分析表以 {@link BinaryTableFormat} 保存在缓存目录中, 文件名由构造方法, 构造程序的版本
+ * ({@link TableGenerator#VERSION}) 以及语法文件与码点文件的散列组成, 三者都相同时直接加载, 否则重新构造并写入缓存.
+ * <br>
+ * 多个编译进程可以共用同一个缓存目录: 新的表先写入同一目录下的临时文件, 再以原子的重命名发布,
+ * 因此读者要么看不到该文件, 要么看到完整的文件. 两个进程同时未命中时会各自构造一次, 后发布的覆盖先发布的, 内容相同.
+ */
+public final class TableCache {
+    /**
+     * 使用默认的缓存目录与默认的语法文件, 码点文件
+     *
+     * @param method 分析表的构造方法
+     * @return 编译后的分析表
+     */
+    public static CompiledLRTable load(TableGenerator.Method method) {
+        return load(method, FilePathConfig.TABLE_CACHE_DIR);
+    }
+
+    /**
+     * 从缓存加载分析表, 未命中时构造并写入缓存
+     * <br>
+     * 缓存目录不可写或不支持原子重命名时只是不写入缓存, 仍然返回构造出的分析表. 除缓存文件外不写其它文件.
+     *
+     * @param method    分析表的构造方法
+     * @param directory 缓存目录, 不存在时会被创建
+     * @return 编译后的分析表
+     */
+    public static CompiledLRTable load(TableGenerator.Method method, String directory) {
+        final long key = BinaryTableFormat.hashFiles(FilePathConfig.GRAMMAR_PATH, FilePathConfig.CODING_MAP_PATH);
+        final long grammarHash = BinaryTableFormat.hashGrammar(FilePathConfig.GRAMMAR_PATH);
+        final var path = Paths.get(directory, "%s-v%d-%016x.bin".formatted(method.name().toLowerCase(), TableGenerator.VERSION, key));
+
+        if (Files.exists(path)) {
+            try {
+                return BinaryTableFormat.read(path.toString(), grammarHash, BinaryTableFormat.hashGenerator(method));
+            } catch (RuntimeException e) {
+                // 文件损坏或格式版本不符, 重新构造后覆盖
+                System.out.println("缓存的分析表不可用, 重新构造: " + e);
+            }
+        }
+
+        final var generator = new TableGenerator(method);
+        generator.run();
+        final var table = CompiledLRTable.compile(generator.getTable());
+        publish(table, grammarHash, BinaryTableFormat.hashGenerator(method), path);
+        return table;
+    }
+
+    private static void publish(CompiledLRTable table, long grammarHash, long sourceHash, Path path) {
+        Path temp = null;
+        try {
+            Files.createDirectories(path.getParent());
+            // 临时文件名含有进程号, 不同进程不会写同一个临时文件; 不用 createTempFile, 以免文件权限只对当前用户开放
+            temp = path.resolveSibling("%s.%d-%d.tmp".formatted(path.getFileName(), ProcessHandle.current().pid(), System.nanoTime()));
+            BinaryTableFormat.write(table, grammarHash, sourceHash, temp.toString());
+            try {
+                Files.move(temp, path, StandardCopyOption.ATOMIC_MOVE);
+                temp = null;
+            } catch (FileAlreadyExistsException | AtomicMoveNotSupportedException e) {
+                // 目标已被其它进程发布 (不能原子替换的平台), 或文件系统不支持原子重命名: 放弃写入缓存
+            }
+        } catch (IOException | RuntimeException e) {
+            System.out.println("无法写入分析表缓存 " + path + ": " + e);
+        } finally {
+            if (temp != null) {
+                try {
+                    Files.deleteIfExists(temp);
+                } catch (IOException ignored) {
+                    // 残留的临时文件不影响缓存的正确性
+                }
+            }
+        }
+    }
+
+    private TableCache() {
+    }
+}
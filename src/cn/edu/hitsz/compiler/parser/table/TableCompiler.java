@@ -0,0 +1,84 @@
+package cn.edu.hitsz.compiler.parser.table;
+
+import cn.edu.hitsz.compiler.lexer.TokenKind;
+import cn.edu.hitsz.compiler.utils.FilePathConfig;
+
+/**
+ * 生成预编译二进制分析表的命令行工具
+ * <br>
+ * 用法:
+ * <pre>
+ *     java cn.edu.hitsz.compiler.parser.table.TableCompiler csv [输入 CSV] [输出文件]
+ *     java cn.edu.hitsz.compiler.parser.table.TableCompiler generate [slr|lr1|lalr] [输出文件]
+ * </pre>
+ * 前者转换第三方工具构造的 CSV 分析表, 后者使用 {@link TableGenerator} 从语法文件构造分析表, 构造方法默认为 LALR(1),
+ * 同时把规范集族输出到 data/out/items.txt 以便调试.
+ * 省略的路径取 {@link FilePathConfig} 中的默认值. 码点文件与语法文件总是取默认路径.
+ * 生成的文件记录了分析表的来源; 编译器接受由默认路径的 CSV (且与其当前内容一致) 转换而来, 或是由当前版本的 {@link TableGenerator}
+ * 构造的二进制分析表.
+ *
+ * @see BinaryTableFormat
+ */
+public final class TableCompiler {
+    public static void main(String[] args) {
+        if (args.length == 0) {
+            usage();
+            return;
+        }
+
+        TokenKind.loadTokenKinds();
+
+        final LRTable table;
+        final long sourceHash;
+        final String output;
+        switch (args[0]) {
+            case "csv" -> {
+                final var input = args.length > 1 ? args[1] : FilePathConfig.LR1_TABLE_PATH;
+                table = new TableLoader().load(input);
+                sourceHash = BinaryTableFormat.hashFiles(input);
+                output = args.length > 2 ? args[2] : FilePathConfig.LR1_TABLE_BINARY_PATH;
+            }
+            case "generate" -> {
+                // 构造方法可以省略
+                var method = TableGenerator.Method.LALR;
+                int next = 1;
+                if (args.length > next && parseMethod(args[next]) != null) {
+                    method = parseMethod(args[next++]);
+                }
+
+                final var generator = new TableGenerator(method);
+                generator.run();
+                generator.dumpItems();
+                table = generator.getTable();
+                sourceHash = BinaryTableFormat.hashGenerator(method);
+                output = args.length > next ? args[next] : FilePathConfig.LR1_TABLE_BINARY_PATH;
+            }
+            default -> {
+                usage();
+                return;
+            }
+        }
+
+        final var compiled = CompiledLRTable.compile(table);
+        BinaryTableFormat.write(compiled, BinaryTableFormat.hashGrammar(FilePathConfig.GRAMMAR_PATH), sourceHash, output);
+        System.out.printf("已生成二进制分析表 %s: %d 个状态, %d 条产生式%n",
+            output, compiled.getStateCount(), compiled.getProductions().length);
+    }
+
+    private static TableGenerator.Method parseMethod(String name) {
+        return switch (name) {
+            case "slr" -> TableGenerator.Method.SLR;
+            case "lr1" -> TableGenerator.Method.LR1;
+            case "lalr" -> TableGenerator.Method.LALR;
+            default -> null;
+        };
+    }
+
+    private static void usage() {
+        System.out.println("Usage: TableCompiler csv [input.csv] [output.bin]");
+        System.out.println("       TableCompiler generate [slr|lr1|lalr] [output.bin]");
+    }
+
+    private TableCompiler() {
+    }
+}
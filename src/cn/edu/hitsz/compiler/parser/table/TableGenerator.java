@@ -4,45 +4,114 @@ import cn.edu.hitsz.compiler.lexer.TokenKind;
 import cn.edu.hitsz.compiler.utils.FileUtils;
 
 import java.util.*;
-import java.util.stream.Collectors;
-import java.util.stream.Stream;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
 
 /**
  * 根据语法文件构造 LR 分析表.
  * <br>
- * 此文件为非必需的框架文件, 用于提升整个编译器处理流程的统一性以及为学生提供 SLR(1) 分析表生成程序的参考. 正常情况下你不需要了解该文件.
+ * 此文件为非必需的框架文件, 用于提升整个编译器处理流程的统一性以及为学生提供 SLR(1), LR(1) 与 LALR(1) 分析表生成程序的参考.
+ * 正常情况下你不需要了解该文件.
  */
 public class TableGenerator {
+    /**
+     * 分析表的构造方法
+     */
+    public enum Method {
+        /**
+         * LR(0) 项目集族, 以 FOLLOW 集合决定规约
+         */
+        SLR,
+        /**
+         * 带向前看符号的规范 LR(1) 项目集族, 状态数最多
+         */
+        LR1,
+        /**
+         * LR(0) 项目集族加上 LALR(1) 向前看符号, 相当于合并同心的 LR(1) 状态, 状态数与 LR(0) 相同
+         */
+        LALR
+    }
+
+    /**
+     * 构造程序的版本. 同一文法构造出的分析表 (包括状态编号) 有任何变化时都应递增, 使 {@link TableCache} 中的旧表失效
+     */
+    public static final int VERSION = 1;
+
     public TableGenerator() {
-        this.productions = GrammarInfo.getProductionsInOrder();
+        this(Method.SLR);
+    }
+
+    /**
+     * @param method 分析表的构造方法
+     */
+    public TableGenerator(Method method) {
+        this(GrammarInfo.getProductionsInOrder(), GrammarInfo.getNonTerminals().values(), method);
+    }
+
+    /**
+     * 从给定的文法构造分析表, 终结符总是码点文件中的全部词法单元类型
+     *
+     * @param productions  按编号排列的产生式, 第一条必须形如 S -> S'
+     * @param nonTerminals 文法中的全部非终结符
+     * @param method       分析表的构造方法
+     */
+    public TableGenerator(List<Production> productions, Collection<NonTerminal> nonTerminals, Method method) {
+        this(productions, nonTerminals, method, ForkJoinPool.commonPool());
+    }
+
+    /**
+     * @param productions  按编号排列的产生式, 第一条必须形如 S -> S'
+     * @param nonTerminals 文法中的全部非终结符
+     * @param method       分析表的构造方法
+     * @param pool         并行构造项目集族的线程池
+     */
+    public TableGenerator(List<Production> productions, Collection<NonTerminal> nonTerminals, Method method, ForkJoinPool pool) {
+        this.method = method;
+        this.pool = pool;
+        this.productions = productions;
         this.terminals = new HashSet<>(TokenKind.allAllowedTokenKinds().values());
-        this.nonTerminals = new HashSet<>(GrammarInfo.getNonTerminals().values());
+        this.nonTerminals = new HashSet<>(nonTerminals);
 
         if (productions.get(0).body().size() != 1) {
             throw new RuntimeException("The first production in grammar file must like S -> S'");
         }
+
+        indexGrammar();
     }
 
     /**
-     * 主体方法
+     * 主体方法. 不写任何文件, 需要规范集族时在其后调用 {@link #dumpItems()}
      */
     public void run() {
         calcFirst();
         calcFollow();
         constructDFA();
-        dumpItems();
         genTable();
     }
 
     /**
-     * 将该分析表生成的 LR(0) 规范集族打印到某个文件之中, 用于调试
+     * 将该分析表生成的规范集族打印到某个文件之中, 用于调试. 带有向前看符号的项目在其后列出向前看符号.
+     * 须在 {@link #run()} 之后调用
      */
     public void dumpItems() {
         final var lines = new ArrayList<String>();
         for (final var status : allStatusInIndexOrder) {
             lines.add("%d: ".formatted(status.index()));
-            for (final var item : including.get(status)) {
-                lines.add("    " + item);
+            final var items = closures.get(status.index());
+            final var lookahead = lookaheads.isEmpty() ? null : lookaheads.get(status.index());
+            int slot = 0;
+            for (int item = nextSetBit(items, 0); item >= 0; item = nextSetBit(items, item + 1), slot++) {
+                final var line = new StringBuilder("    ").append(describeItem(item));
+                if (lookahead != null) {
+                    final int from = slot * terminalWords * 64;
+                    final int to = from + terminalWords * 64;
+                    String separator = ", ";
+                    for (int a = nextSetBit(lookahead, from); a >= 0 && a < to; a = nextSetBit(lookahead, a + 1)) {
+                        line.append(separator).append(symbols[nonTerminalCount + a - from]);
+                        separator = "/";
+                    }
+                }
+                lines.add(line.toString());
             }
         }
 
@@ -56,349 +125,912 @@ public class TableGenerator {
         return new LRTable(allStatusInIndexOrder, new ArrayList<>(terminals), new ArrayList<>(nonTerminals));
     }
 
+    private final Method method;
+    private final ForkJoinPool pool;
     private final List<Production> productions;
     private final Set<TokenKind> terminals;
     private final Set<NonTerminal> nonTerminals;
 
-    private final Map<Term, Set<TokenKind>> first = new HashMap<>();
-    private final Map<Term, Set<TokenKind>> follow = new HashMap<>();
+    //============================== first 与 follow ==============================
+
+    /**
+     * 可空的非终结符, 以非终结符的编号为下标的位图
+     */
+    private long[] nullable;
+
+    /**
+     * 各文法符号的 first 集合与各非终结符的 follow 集合, 均为以终结符的编号为下标的位图, 每个符号 terminalWords 个字
+     */
+    private long[] first;
+    private long[] follow;
 
-    private final Set<Term> visited = new HashSet<>();
+    /**
+     * 各项目点之后的部分的 first 集合 (每个项目 terminalWords 个字), 以及这部分能否推导出空串. 点在末尾的项目对应空串
+     */
+    private long[] itemFirst;
+    private long[] itemNullable;
 
     /**
-     * 计算所有符号的 first 集合 <br>
-     * 终结符的 first 就是它自身, 非终结符的 first 则递归计算
+     * 计算可空的非终结符与所有符号的 first 集合
+     * <br>
+     * 可空性: 记录每条产生式体中尚未确定可空的符号数, 某个非终结符确定可空时只需更新它出现过的产生式, 每次出现至多处理一次.
+     * <br>
+     * first: 若 A -> X1 ... Xn 且 X1 ... X(i-1) 都可空, 则 first(Xi) 包含于 first(A). 这些包含关系构成一个图,
+     * 用 digraph 算法按强连通分量一次求出所有 first, 得到的正是这组包含关系的最小不动点; 左递归只是图中的环, 不需要特殊处理.
      */
     private void calcFirst() {
-        for (final var terminal : terminals) {
-            first.put(terminal, Set.of(terminal));
+        final int tw = terminalWords;
+
+        nullable = new long[words(nonTerminalCount)];
+        final var remaining = new int[productions.size()];
+        final var occurrences = new IntList[nonTerminalCount];
+        final var found = new IntList();
+        for (int p = 0; p < productions.size(); p++) {
+            for (int item = itemBase[p]; itemAfterDot[item] >= 0; item++) {
+                final int symbol = itemAfterDot[item];
+                remaining[p]++;
+                if (symbol < nonTerminalCount) {
+                    if (occurrences[symbol] == null) {
+                        occurrences[symbol] = new IntList();
+                    }
+                    occurrences[symbol].add(p);
+                }
+            }
+            if (remaining[p] == 0 && testAndSet(nullable, productionHead[p])) {
+                found.add(productionHead[p]);
+            }
+        }
+        for (int i = 0; i < found.size(); i++) {
+            final var uses = occurrences[found.get(i)];
+            for (int k = 0; uses != null && k < uses.size(); k++) {
+                final int p = uses.get(k);
+                if (--remaining[p] == 0 && testAndSet(nullable, productionHead[p])) {
+                    found.add(productionHead[p]);
+                }
+            }
         }
 
-        for (final var nonTerminal : nonTerminals) {
-            visited.clear();
-            calcFirst(nonTerminal);
+        // 终结符的 first 就是它自身
+        first = new long[symbols.length * tw];
+        for (int symbol = nonTerminalCount; symbol < symbols.length; symbol++) {
+            set(first, symbol * tw * 64 + symbol - nonTerminalCount);
+        }
+        final var relation = new IntList[symbols.length];
+        for (int p = 0; p < productions.size(); p++) {
+            final int head = productionHead[p];
+            for (int item = itemBase[p]; itemAfterDot[item] >= 0; item++) {
+                final int symbol = itemAfterDot[item];
+                if (symbol != head) {
+                    if (relation[head] == null) {
+                        relation[head] = new IntList();
+                    }
+                    relation[head].add(symbol);
+                }
+                if (!isNullable(symbol)) {
+                    break;
+                }
+            }
         }
+        new Digraph(relation, first, tw).run();
 
+        // 从产生式体的末尾向前, 依次求出各项目点之后的部分的 first
+        itemFirst = new long[itemCount * tw];
+        itemNullable = new long[words(itemCount)];
+        for (int p = 0; p < productions.size(); p++) {
+            final int end = itemBase[p + 1] - 1;
+            set(itemNullable, end);
+            for (int item = end - 1; item >= itemBase[p]; item--) {
+                final int symbol = itemAfterDot[item];
+                orInto(itemFirst, item * tw, first, symbol * tw, tw);
+                if (isNullable(symbol)) {
+                    orInto(itemFirst, item * tw, itemFirst, (item + 1) * tw, tw);
+                    if (get(itemNullable, item + 1)) {
+                        set(itemNullable, item);
+                    }
+                }
+            }
+        }
     }
 
     /**
-     * 递归计算特定非终结符的 first
-     *
-     * @param nonTerminal 非终结符
-     * @return 其 first 集合
-     */
-    private Set<TokenKind> calcFirst(Term nonTerminal) {
-        // 如果已经被计算, 则直接返回缓存的结果
-        if (first.containsKey(nonTerminal)) {
-            return first.get(nonTerminal);
-        }
-
-        final var result = new LinkedHashSet<TokenKind>();
-        for (final var production : productions) {
-            if (nonTerminal == production.head()) {
-                // 在文法中寻找以该非终结符为头的产生式
-                final var firstSymbol = production.body().get(0);
-                // 记录已经在栈中的递归过的非终结符, 防止直接或间接的左递归导致程序死循环
-                if (!visited.contains(firstSymbol)) {
-                    // 随后递归查找该产生式体的第一个文法符号的 first 集合
-                    // 它的 first 集合也是该非终结符的 first 集合
-                    visited.add(firstSymbol);
-                    result.addAll(calcFirst(firstSymbol));
+     * 计算所有非终结符的 follow 集合
+     * <br>
+     * 开始符号的 follow 为 EOF. 对 B -> alpha A beta, first(beta) 包含于 follow(A); 若 beta 可空, 则 follow(B) 也包含于 follow(A).
+     * 与 first 同样由 digraph 算法求出最小不动点.
+     */
+    private void calcFollow() {
+        final int tw = terminalWords;
+
+        follow = new long[nonTerminalCount * tw];
+        set(follow, productionHead[0] * tw * 64 + terminalOf(TokenKind.eof()));
+        final var relation = new IntList[nonTerminalCount];
+        for (int p = 0; p < productions.size(); p++) {
+            final int head = productionHead[p];
+            for (int item = itemBase[p]; itemAfterDot[item] >= 0; item++) {
+                final int symbol = itemAfterDot[item];
+                if (symbol >= nonTerminalCount) {
+                    continue;
+                }
+
+                orInto(follow, symbol * tw, itemFirst, (item + 1) * tw, tw);
+                if (get(itemNullable, item + 1) && symbol != head) {
+                    if (relation[symbol] == null) {
+                        relation[symbol] = new IntList();
+                    }
+                    relation[symbol].add(head);
                 }
             }
         }
+        new Digraph(relation, follow, tw).run();
+    }
 
-        first.put(nonTerminal, result);
-        return result;
+    private boolean isNullable(int symbol) {
+        return symbol < nonTerminalCount && get(nullable, symbol);
     }
 
+    //============================== 文法的整数编号 ==============================
 
     /**
-     * 计算所有非终结符的 follow 集合
+     * 所有文法符号, 下标即符号的编号: 先是全部非终结符, 然后是全部终结符.
+     * 构造项目集族时按编号顺序尝试转移, 与按集合的遍历顺序尝试得到的状态编号相同
      */
-    private void calcFollow() {
+    private Term[] symbols;
+    private final Map<Term, Integer> symbolIds = new HashMap<>();
+    private int nonTerminalCount;
+
+    /**
+     * 以终结符为下标的位图所占的字数
+     */
+    private int terminalWords;
+
+    /**
+     * 以各个非终结符为头的产生式在 productions 中的下标, 按非终结符的编号索引; 以及各产生式的头的编号
+     */
+    private int[][] productionsByHead;
+    private int[] productionHead;
+
+    /**
+     * 项目以整数表示: 产生式 p 的点在位置 dot 的项目编号为 itemBase[p] + dot.
+     * itemProduction 与 itemAfterDot 按项目编号给出其产生式的下标与点后的符号编号 (点在末尾时为 -1)
+     */
+    private int[] itemBase;
+    private int[] itemProduction;
+    private int[] itemAfterDot;
+    private int itemCount;
+
+    /**
+     * 给文法符号, 产生式与项目编号, 并建立产生式头到产生式的索引
+     */
+    private void indexGrammar() {
+        symbols = new Term[nonTerminals.size() + terminals.size()];
+        nonTerminalCount = nonTerminals.size();
+        terminalWords = words(terminals.size());
+        int id = 0;
         for (final var nonTerminal : nonTerminals) {
-            visited.clear();
-            calcFollow(nonTerminal);
+            symbols[id] = nonTerminal;
+            symbolIds.put(nonTerminal, id++);
+        }
+        for (final var terminal : terminals) {
+            symbols[id] = terminal;
+            symbolIds.put(terminal, id++);
+        }
+
+        final var byHead = new int[nonTerminalCount][];
+        final var headCounts = new int[nonTerminalCount];
+        itemBase = new int[productions.size() + 1];
+        for (int p = 0; p < productions.size(); p++) {
+            final var production = productions.get(p);
+            headCounts[symbolOf(production.head())]++;
+            itemBase[p + 1] = itemBase[p] + production.body().size() + 1;
+        }
+        for (int head = 0; head < nonTerminalCount; head++) {
+            byHead[head] = new int[headCounts[head]];
+            headCounts[head] = 0;
+        }
+
+        itemCount = itemBase[productions.size()];
+        productionHead = new int[productions.size()];
+        itemProduction = new int[itemCount];
+        itemAfterDot = new int[itemCount];
+        for (int p = 0; p < productions.size(); p++) {
+            final var production = productions.get(p);
+            final int head = symbolOf(production.head());
+            byHead[head][headCounts[head]++] = p;
+            productionHead[p] = head;
+
+            final var body = production.body();
+            for (int dot = 0; dot <= body.size(); dot++) {
+                final int item = itemBase[p] + dot;
+                itemProduction[item] = p;
+                itemAfterDot[item] = dot == body.size() ? -1 : symbolOf(body.get(dot));
+            }
+        }
+        productionsByHead = byHead;
+    }
+
+    private int symbolOf(Term term) {
+        final var id = symbolIds.get(term);
+        if (id == null) {
+            throw new RuntimeException("Unknown term in grammar: " + term);
         }
+        return id;
+    }
 
-        // 对于找完所有产生式了都还没没有 follow 的非终结符
-        // 它必然是一个没有被使用的非终结符, 这意味着它的 follow 就是 EOF
-        nonTerminals.stream()
-            .map(follow::get).filter(Set::isEmpty)
-            .forEach(set -> set.add(TokenKind.eof()));
+    /**
+     * @return 终结符的编号, 即其符号编号减去非终结符的个数
+     */
+    private int terminalOf(TokenKind terminal) {
+        return symbolOf(terminal) - nonTerminalCount;
     }
 
     /**
-     * 递归计算给定非终结符的 follow 集合
+     * 项目的文本表示
+     * <br>
+     * 对于 A -> B . C, 其产生式为 A -> B C, 点的位置为 1 (其下一个项 C 的索引) <br>
+     * 对于 A -> B C ., 其产生式为 A -> B C, 点的位置为 2 (其产生式体的项数量) <br>
      *
-     * @param nonTerminal 给定的非终止符
-     * @return 其 follow 集合
+     * @param item 项目编号
+     * @return 形如 A -> B . C 的文本
      */
-    private Set<TokenKind> calcFollow(NonTerminal nonTerminal) {
-        // 与 first 类似, 先查找缓存
-        if (follow.containsKey(nonTerminal)) {
-            return follow.get(nonTerminal);
+    private String describeItem(int item) {
+        final int p = itemProduction[item];
+        final int dot = item - itemBase[p];
+        final var production = productions.get(p);
+        final var builder = new StringBuilder();
+
+        builder.append(production.head());
+        builder.append(" -> ");
+
+        final var body = production.body();
+        for (int i = 0; i < body.size(); i++) {
+            if (i == dot) {
+                builder.append(" .");
+            }
+            builder.append(" ").append(body.get(i));
         }
 
-        final var result = new LinkedHashSet<TokenKind>();
-        for (final var production : productions) {
-            final var body = production.body();
+        if (dot == body.size()) {
+            builder.append(" .");
+        }
 
-            // 对该非终结符在每条产生式体中的可能出现, 我们都要将紧跟在该出现后面的项的 first 加入其 follow 集合
-            // 我们直接枚举每条产生式体的每个项
-            for (int i = 0; i < body.size() - 1; i++) {
-                // 如果发现目前的 curr 的话, 后面跟着的符号的 first 就是它的 follow
-                final var symbol = body.get(i);
-                final var next = body.get(i + 1);
+        return builder.toString();
+    }
 
-                if (symbol.equals(nonTerminal)) {
-                    result.addAll(first.get(next));
-                }
+    //============================== 项目集族 ==============================
+
+    /**
+     * 项目集的核, 即按编号排列的 (除初始项目外) 点不在开头的项目. 核相同的项目集闭包也相同, 因此以核来判断项目集是否已经存在,
+     * 已经存在的项目集就不必再求一次闭包.
+     * <br>
+     * 构造 LR(1) 项目集族时, 核中每个项目还带有向前看符号集合, 依次存放在 lookaheads 中 (每个项目 terminalWords 个字);
+     * 构造 LR(0) 项目集族时 lookaheads 为空.
+     */
+    private record Kernel(int[] items, long[] lookaheads) {
+        @Override
+        public boolean equals(Object obj) {
+            return obj instanceof Kernel kernel
+                && Arrays.equals(items, kernel.items) && Arrays.equals(lookaheads, kernel.lookaheads);
+        }
+
+        @Override
+        public int hashCode() {
+            return Arrays.hashCode(items) * 31 + Arrays.hashCode(lookaheads);
+        }
+    }
+
+    private static final long[] NO_LOOKAHEADS = new long[0];
+
+    /**
+     * 各状态的项目集 (闭包), 以项目编号为下标的位图
+     */
+    private final List<long[]> closures = new ArrayList<>();
+
+    /**
+     * 各状态中各项目的向前看符号集合, 以终结符的编号 (符号编号减去非终结符个数) 为下标的位图.
+     * 项目按编号递增的顺序依次存放, 每个项目 terminalWords 个字. SLR(1) 不使用该列表, LALR(1) 只填写点在末尾的项目
+     */
+    private final List<long[]> lookaheads = new ArrayList<>();
+
+    /**
+     * 各状态的转移: 在 transitionSymbols[i][k] 上转移到状态 transitionTargets[i][k], 按符号编号递增排列,
+     * 因此非终结符上的转移总在前面
+     */
+    private final List<int[]> transitionSymbols = new ArrayList<>();
+    private final List<int[]> transitionTargets = new ArrayList<>();
+    private final List<Status> allStatusInIndexOrder = new ArrayList<>();
+
+    /**
+     * 求闭包与展开项目集时使用的临时数组. 项目集族按层并行构造, 每个任务各用一份
+     */
+    private final class Workspace {
+        /**
+         * 求闭包的工作队列, 已展开的非终结符集合, 以及项目在闭包中的序号
+         */
+        private final int[] worklist = new int[itemCount];
+        private final long[] expanded = new long[words(nonTerminalCount)];
+        private final int[] slotOfItem = new int[itemCount];
+
+        /**
+         * 各文法符号的后继核 (及后继项在当前项目集中的序号), 以及出现过的文法符号
+         */
+        private final int[][] kernels = new int[symbols.length][];
+        private final int[][] kernelSlots = new int[symbols.length][];
+        private final int[] kernelSizes = new int[symbols.length];
+        private final long[] touched = new long[words(symbols.length)];
+    }
+
+    /**
+     * 一个项目集关于各个文法符号的 GO(I, X) 的核, 按符号编号递增排列
+     */
+    private record Successors(int[] symbols, Kernel[] kernels) {
+    }
+
+    @FunctionalInterface
+    private interface StateAction {
+        void run(Workspace workspace, int index);
+    }
+
+    /**
+     * 每个并行任务至少处理的项目集个数, 项目集更少时直接在当前线程上处理
+     */
+    private static final int MIN_STATES_PER_TASK = 64;
+
+    /**
+     * 构造出所有状态并维护状态与项集之间的对应关系
+     */
+    private void constructDFA() {
+        constructCanonicalLRCollection();
+        if (method == Method.LALR) {
+            computeLALRLookaheads();
+        }
+
+        for (int idx = 0; idx < closures.size(); idx++) {
+            allStatusInIndexOrder.add(Status.create(idx));
+        }
+    }
+
+    /**
+     * 构造核 {@code kernel} 的闭包, 相当于理论课中的 CLOSURE(I) 函数
+     *
+     * @param workspace 临时数组
+     * @param kernel    项集 I
+     * @return 闭包
+     */
+    private long[] constructClosure(Workspace workspace, int[] kernel) {
+        final var worklist = workspace.worklist;
+        final var expanded = workspace.expanded;
+        final var result = new long[words(itemCount)];
+        Arrays.fill(expanded, 0);
+
+        // 采用 BFS 的方法来避免每次都检测集合的更改
+        int tail = 0;
+        for (final int item : kernel) {
+            set(result, item);
+            worklist[tail++] = item;
+        }
+
+        for (int head = 0; head < tail; head++) {
+            // 获得当前项中点后面的符号, 每个非终结符只需展开一次
+            final int afterDot = itemAfterDot[worklist[head]];
+            if (afterDot < 0 || afterDot >= nonTerminalCount || !testAndSet(expanded, afterDot)) {
+                continue;
             }
 
-            // 如果该非终结符出现在产生式的末尾, 那么该产生式的头的 follow 集合也要加入其 follow 集合中
-            final var lastInBody = body.get(body.size() - 1);
-            if (lastInBody.equals(nonTerminal)) {
-                final var head = production.head();
-                if (visited.contains(head)) {
-                    // 如果该产生式头已经在栈中了, 那么意味着这个非终结符有可能一直展开自己
-                    // 这时候 EOF 也可能是它的 Follow
-                    result.add(TokenKind.eof());
-                } else {
-                    // 否则直接递归查找
-                    visited.add(head);
-                    result.addAll(calcFollow(head));
+            // 随后查找以该符号作为头部的产生式, 构造点在对应产生式开头的新项
+            for (final int p : productionsByHead[afterDot]) {
+                final int item = itemBase[p];
+                if (testAndSet(result, item)) {
+                    worklist[tail++] = item;
                 }
             }
         }
 
-        follow.put(nonTerminal, result);
         return result;
     }
 
     /**
-     * 表示一个项目
-     * <br>
-     * 对于 A -> B . C, 其 production 为 A -> B C, dot 为 1 (其下一个项 C 的索引) <br>
-     * 对于 A -> B C ., 其 production 为 A -> B C, dot 为 2 (其产生式体的项数量) <br>
+     * 求 LR(1) 闭包中各项目的向前看符号: 对 [A -> alpha . B beta, a], B 的各产生式的初始项目的向前看符号包含 first(beta a).
+     * 项目集本身与 LR(0) 闭包相同, 只需在其上传播向前看符号直到不动点
      *
-     * @param production 产生式
-     * @param dot        目前解析到的位置
+     * @param workspace 临时数组
+     * @param closure   核的 LR(0) 闭包
+     * @param kernel    带有向前看符号的核
+     * @return 闭包中各项目的向前看符号
      */
-    private record Item(Production production, int dot) {
-        /**
-         * @return 点的位置是否在产生式的末尾
-         */
-        public boolean isDotAtEnd() {
-            return production.body().size() == dot;
+    private long[] constructClosureLookaheads(Workspace workspace, long[] closure, Kernel kernel) {
+        final var worklist = workspace.worklist;
+        final var slotOfItem = workspace.slotOfItem;
+        final int tw = terminalWords;
+        int count = 0;
+        for (int item = nextSetBit(closure, 0); item >= 0; item = nextSetBit(closure, item + 1)) {
+            worklist[count] = item;
+            slotOfItem[item] = count++;
         }
 
-        /**
-         * @return 获得点后面的文法符号; 若点的位置在末尾则返回空
-         */
-        public Optional<Term> getAfterDot() {
-            if (isDotAtEnd()) {
-                return Optional.empty();
-            } else {
-                return Optional.of(production.body().get(dot));
-            }
+        final var result = new long[count * tw];
+        final var items = kernel.items();
+        for (int k = 0; k < items.length; k++) {
+            System.arraycopy(kernel.lookaheads(), k * tw, result, slotOfItem[items[k]] * tw, tw);
         }
 
-        /**
-         * @return 获得当前项目的后继项; 若点的位置在末尾则返回空
-         */
-        public Optional<Item> getNextItem() {
-            if (isDotAtEnd()) {
-                return Optional.empty();
-            } else {
-                return Optional.of(new Item(production, dot + 1));
-            }
+        // 待处理的序号, 以循环队列存放
+        final var queued = new boolean[count];
+        final var queue = new int[count];
+        int head = 0;
+        int size = count;
+        for (int slot = 0; slot < count; slot++) {
+            queue[slot] = slot;
+            queued[slot] = true;
         }
 
-        @Override
-        public String toString() {
-            final var builder = new StringBuilder();
+        while (size > 0) {
+            final int slot = queue[head];
+            head = head + 1 == count ? 0 : head + 1;
+            size--;
+            queued[slot] = false;
 
-            builder.append(production.head());
-            builder.append(" -> ");
+            final int item = worklist[slot];
+            final int afterDot = itemAfterDot[item];
+            if (afterDot < 0 || afterDot >= nonTerminalCount) {
+                continue;
+            }
 
-            final var body = production.body();
-            for (int i = 0; i < body.size(); i++) {
-                if (i == dot) {
-                    builder.append(" .");
+            // 传播 first(beta), beta 可空时还要传播自身的向前看符号
+            final int rest = item + 1;
+            final boolean restNullable = get(itemNullable, rest);
+            for (final int p : productionsByHead[afterDot]) {
+                final int target = slotOfItem[itemBase[p]];
+                boolean changed = orInto(result, target * tw, itemFirst, rest * tw, tw);
+                if (restNullable) {
+                    changed |= orInto(result, target * tw, result, slot * tw, tw);
+                }
+                if (changed && !queued[target]) {
+                    queued[target] = true;
+                    queue[(head + size++) % count] = target;
                 }
-                builder.append(" ").append(body.get(i));
             }
+        }
 
-            if (dot == body.size()) {
-                builder.append(" .");
+        return result;
+    }
+
+    /**
+     * 构造规范项目集族: SLR(1) 与 LALR(1) 为 LR(0) 项目集族, LR(1) 为带向前看符号的项目集族
+     * <br>
+     * 按 BFS 的层次构造: 同一层的项目集互不依赖, 先在线程池上并行地求出它们的后继核, 再按状态编号与符号编号的顺序
+     * 依次查找或登记这些核, 最后并行地求出新登记的核的闭包. 登记的顺序与逐个状态展开的 BFS 完全相同,
+     * 因此状态编号 (以及 dumpTable 的输出) 与线程数和调度无关.
+     */
+    private void constructCanonicalLRCollection() {
+        final int tw = terminalWords;
+        final boolean withLookaheads = method == Method.LR1;
+
+        // 起始项目 S -> . S', 其向前看符号为 EOF
+        final var initLookaheads = withLookaheads ? new long[tw] : NO_LOOKAHEADS;
+        if (withLookaheads) {
+            set(initLookaheads, terminalOf(TokenKind.eof()));
+        }
+        final var initKernel = new Kernel(new int[]{itemBase[0]}, initLookaheads);
+        final var stateOfKernel = new HashMap<Kernel, Integer>();
+        stateOfKernel.put(initKernel, 0);
+        final var pending = new ArrayList<Kernel>();
+        pending.add(initKernel);
+
+        // [from, to) 为当前一层的状态
+        int from = 0;
+        while (!pending.isEmpty()) {
+            final int to = from + pending.size();
+            final var newClosures = new long[pending.size()][];
+            final var newLookaheads = new long[pending.size()][];
+            final int base = from;
+            forEachState(0, pending.size(), (workspace, i) -> {
+                final var kernel = pending.get(i);
+                newClosures[i] = constructClosure(workspace, kernel.items());
+                if (withLookaheads) {
+                    newLookaheads[i] = constructClosureLookaheads(workspace, newClosures[i], kernel);
+                }
+            });
+            closures.addAll(Arrays.asList(newClosures));
+            if (withLookaheads) {
+                lookaheads.addAll(Arrays.asList(newLookaheads));
             }
 
-            return builder.toString();
+            final var successors = new Successors[to - from];
+            forEachState(from, to, (workspace, state) -> successors[state - base] = constructSuccessors(workspace, state));
+
+            pending.clear();
+            for (final var successor : successors) {
+                final var kernels = successor.kernels();
+                final var targets = new int[kernels.length];
+                for (int k = 0; k < kernels.length; k++) {
+                    var target = stateOfKernel.get(kernels[k]);
+                    if (target == null) {
+                        target = to + pending.size();
+                        stateOfKernel.put(kernels[k], target);
+                        pending.add(kernels[k]);
+                    }
+                    targets[k] = target;
+                }
+
+                transitionSymbols.add(successor.symbols());
+                transitionTargets.add(targets);
+            }
+            from = to;
         }
     }
 
-    private final Map<Set<Item>, Status> belongTo = new HashMap<>();
-    private final Map<Status, Set<Item>> including = new HashMap<>();
-    private final List<Status> allStatusInIndexOrder = new ArrayList<>();
-
     /**
-     * 构造出所有状态并维护状态与项集之间的对应关系
+     * 求状态 {@code state} 的所有后继核
+     * <br>
+     * 每个项目集只扫描一遍, 按点后面的符号把各项的后继项分到对应的核中, 一次得到它关于所有文法符号的 GO(I, X) 的核.
+     *
+     * @param workspace 临时数组
+     * @param state     已求出闭包 (与向前看符号) 的状态
+     * @return 按符号编号排列的后继核
      */
-    private void constructDFA() {
-        final var argumentProduction = productions.get(0);
-        final var initItem = new Item(argumentProduction, 0);
-        final var collections = constructCanonicalLRCollection(initItem);
+    private Successors constructSuccessors(Workspace workspace, int state) {
+        final int tw = terminalWords;
+        final var kernels = workspace.kernels;
+        final var kernelSlots = workspace.kernelSlots;
+        final var kernelSizes = workspace.kernelSizes;
+        final var touched = workspace.touched;
 
-        for (int idx = 0; idx < collections.size(); idx++) {
-            final var status = Status.create(idx);
-            allStatusInIndexOrder.add(status);
+        final var items = closures.get(state);
+        int slot = -1;
+        for (int item = nextSetBit(items, 0); item >= 0; item = nextSetBit(items, item + 1)) {
+            slot++;
+            final int symbol = itemAfterDot[item];
+            if (symbol < 0) {
+                continue;
+            }
+
+            set(touched, symbol);
+            if (kernels[symbol] == null) {
+                kernels[symbol] = new int[4];
+                kernelSlots[symbol] = new int[4];
+            } else if (kernelSizes[symbol] == kernels[symbol].length) {
+                kernels[symbol] = Arrays.copyOf(kernels[symbol], kernelSizes[symbol] * 2);
+                kernelSlots[symbol] = Arrays.copyOf(kernelSlots[symbol], kernelSizes[symbol] * 2);
+            }
+            // 项目按编号递增的顺序扫描, 因此核中的项目也是有序的
+            kernelSlots[symbol][kernelSizes[symbol]] = slot;
+            kernels[symbol][kernelSizes[symbol]++] = item + 1;
+        }
 
-            final var items = collections.get(idx);
-            including.put(status, items);
-            belongTo.put(items, status);
+        final var symbolsOut = new int[bitCount(touched)];
+        final var kernelsOut = new Kernel[symbolsOut.length];
+        int k = 0;
+        for (int symbol = nextSetBit(touched, 0); symbol >= 0; symbol = nextSetBit(touched, symbol + 1)) {
+            final int size = kernelSizes[symbol];
+            var kernelLookaheads = NO_LOOKAHEADS;
+            if (method == Method.LR1) {
+                // 后继项继承原项目的向前看符号
+                final var source = lookaheads.get(state);
+                kernelLookaheads = new long[size * tw];
+                for (int i = 0; i < size; i++) {
+                    System.arraycopy(source, kernelSlots[symbol][i] * tw, kernelLookaheads, i * tw, tw);
+                }
+            }
+            symbolsOut[k] = symbol;
+            kernelsOut[k++] = new Kernel(Arrays.copyOf(kernels[symbol], size), kernelLookaheads);
+            kernelSizes[symbol] = 0;
         }
+        Arrays.fill(touched, 0);
+
+        return new Successors(symbolsOut, kernelsOut);
     }
 
     /**
-     * @param head 头部符号
-     * @return 返回一个流, 其中的元素都是以 head 为头的产生式
+     * 对 [from, to) 中的每个下标执行 {@code action}: 区间被切成若干段在线程池上并行执行, 每段使用各自的临时数组.
+     * 区间较小时直接在当前线程上执行
      */
-    private Stream<Production> getProductionsByHead(Term head) {
-        return productions.stream().filter(production -> production.head().equals(head));
+    private void forEachState(int from, int to, StateAction action) {
+        final int tasks = Math.min((to - from) / MIN_STATES_PER_TASK, pool.getParallelism() * 4);
+        if (tasks <= 1) {
+            final var workspace = new Workspace();
+            for (int i = from; i < to; i++) {
+                action.run(workspace, i);
+            }
+            return;
+        }
+
+        final var futures = new ArrayList<ForkJoinTask<?>>();
+        for (int t = 0; t < tasks; t++) {
+            final int begin = from + (int) ((long) (to - from) * t / tasks);
+            final int end = from + (int) ((long) (to - from) * (t + 1) / tasks);
+            futures.add(pool.submit(() -> {
+                final var workspace = new Workspace();
+                for (int i = begin; i < end; i++) {
+                    action.run(workspace, i);
+                }
+            }));
+        }
+        for (final var future : futures) {
+            future.join();
+        }
     }
 
+    //============================== LALR(1) 向前看符号 ==============================
+
     /**
-     * 构造项集 {@code sourceItem} 的闭包, 相当于理论课中的 CLOSURE(I) 函数
-     *
-     * @param sourceItem 项集 I
-     * @return 闭包
+     * 在 LR(0) 项目集族上用 DeRemer 与 Pennello 的方法求出 LALR(1) 向前看符号
+     * <br>
+     * 对每个非终结符上的转移 (p, A), Follow(p, A) 是在状态 p 中识别出 A 之后可能遇到的终结符:
+     * <ul>
+     *     <li>直接读入的终结符 DR(p, A), 即状态 GO(p, A) 上可以移入的终结符;</li>
+     *     <li>若 r = GO(p, A) 且 C 可空, 则 (p, A) reads (r, C), 跨过 C 后读入的终结符 Read(r, C) 也包含于 Read(p, A);</li>
+     *     <li>若有 B -> beta A gamma, gamma 可空且 p' 经过 beta 转移到 p, 则 (p, A) includes (p', B),
+     *     Follow(p', B) 也包含于 Follow(p, A).</li>
+     * </ul>
+     * reads 与 includes 关系都可能成环, 先后用 digraph 算法按强连通分量求出所有 Read 与 Follow. 最后, 若 p' 经过 beta 转移到 q,
+     * 则状态 q 中 B -> beta . 的向前看符号包含 Follow(p', B) (lookback 关系).
      */
-    private Set<Item> constructClosure(Set<Item> sourceItem) {
-        // 采用 BFS 的方法来避免每次都检测集合的更改
-        final var result = new LinkedHashSet<>(sourceItem);
-        // 已经找到, 但是还未完全探索其能展开的项的项
-        // 类似于 BFS 的队列或者是 mark-and-sweep GC 算法里的灰色列表
-        final var unexpanded = new ArrayDeque<>(sourceItem);
-
-        while (!unexpanded.isEmpty()) {
-            final var top = unexpanded.pollFirst();
-            // 获得当前项中点后面的符号
-            top.getAfterDot().ifPresent(afterDot ->
-                // 随后查找以该符号作为头部的产生式
-                getProductionsByHead(afterDot)
-                    // 构造点在对应产生式开头的新项
-                    .map(production -> new Item(production, 0))
-                    // 对于不在 result 中的新项
-                    .filter(item -> !result.contains(item))
-                    // 加入队列并加入结果中
-                    .peek(unexpanded::add)
-                    .forEach(result::add));
+    private void computeLALRLookaheads() {
+        final int tw = terminalWords;
+        final int stateCount = closures.size();
+
+        // 给非终结符上的转移编号: 状态 p 的第 k 个转移 (必为非终结符上的转移) 编号为 gotoBase[p] + k
+        final var gotoBase = new int[stateCount + 1];
+        for (int p = 0; p < stateCount; p++) {
+            final var symbolsOut = transitionSymbols.get(p);
+            int count = 0;
+            while (count < symbolsOut.length && symbolsOut[count] < nonTerminalCount) {
+                count++;
+            }
+            gotoBase[p + 1] = gotoBase[p] + count;
+        }
+        final int gotoCount = gotoBase[stateCount];
+        final var gotoFrom = new int[gotoCount];
+        for (int p = 0; p < stateCount; p++) {
+            Arrays.fill(gotoFrom, gotoBase[p], gotoBase[p + 1], p);
         }
 
-        return result;
+        // DR(p, A); 识别出 S' 后的状态还应当能读入 EOF
+        final int acceptItem = itemBase[0] + 1;
+        final var follows = new long[gotoCount * tw];
+        for (int x = 0; x < gotoCount; x++) {
+            final int p = gotoFrom[x];
+            final int r = transitionTargets.get(p)[x - gotoBase[p]];
+            for (final int symbol : transitionSymbols.get(r)) {
+                if (symbol >= nonTerminalCount) {
+                    set(follows, x * tw * 64 + symbol - nonTerminalCount);
+                }
+            }
+            if (get(closures.get(r), acceptItem)) {
+                set(follows, x * tw * 64 + terminalOf(TokenKind.eof()));
+            }
+        }
+
+        // (p, A) reads (r, C): r 的转移按符号排序, 非终结符上的转移在前
+        final var reads = new IntList[gotoCount];
+        for (int x = 0; x < gotoCount; x++) {
+            final int p = gotoFrom[x];
+            final int r = transitionTargets.get(p)[x - gotoBase[p]];
+            for (int y = gotoBase[r]; y < gotoBase[r + 1]; y++) {
+                if (isNullable(transitionSymbols.get(r)[y - gotoBase[r]])) {
+                    if (reads[x] == null) {
+                        reads[x] = new IntList();
+                    }
+                    reads[x].add(y);
+                }
+            }
+        }
+        new Digraph(reads, follows, tw).run();
+
+        // 从每个 (p', B) 出发沿 B 的各产生式体走一遍, 得到 includes 与 lookback
+        final var includes = new IntList[gotoCount];
+        final var lookbackStates = new IntList();
+        final var lookbackItems = new IntList();
+        final var lookbackGotos = new IntList();
+        for (int x = 0; x < gotoCount; x++) {
+            final int from = gotoFrom[x];
+            final int head = transitionSymbols.get(from)[x - gotoBase[from]];
+            for (final int p : productionsByHead[head]) {
+                int state = from;
+                for (int item = itemBase[p]; itemAfterDot[item] >= 0; item++) {
+                    final int symbol = itemAfterDot[item];
+                    if (symbol < nonTerminalCount && get(itemNullable, item + 1)) {
+                        final int y = gotoIndex(gotoBase, state, symbol);
+                        if (includes[y] == null) {
+                            includes[y] = new IntList();
+                        }
+                        includes[y].add(x);
+                    }
+                    state = transitionTargets.get(state)[transitionOf(state, symbol)];
+                }
+                lookbackStates.add(state);
+                lookbackItems.add(itemBase[p + 1] - 1);
+                lookbackGotos.add(x);
+            }
+        }
+
+        new Digraph(includes, follows, tw).run();
+
+        // 按 lookback 把 Follow 并入各状态中点在末尾的项目
+        for (int p = 0; p < stateCount; p++) {
+            lookaheads.add(new long[bitCount(closures.get(p)) * tw]);
+        }
+        for (int i = 0; i < lookbackStates.size(); i++) {
+            final int state = lookbackStates.get(i);
+            final var closure = closures.get(state);
+            final int item = lookbackItems.get(i);
+            final int slot = rank(closure, item);
+            orInto(lookaheads.get(state), slot * tw, follows, lookbackGotos.get(i) * tw, tw);
+        }
     }
 
     /**
-     * 相当于理论课中的 GO(I, X) 函数 (转移函数)
-     *
-     * @param items 当前项集 I
-     * @param term  文法符号 X
-     * @return I 关于 X 的后继项目集
+     * @return 状态 state 的转移中符号 symbol 的下标
      */
-    private Set<Item> constructGoto(Set<Item> items, Term term) {
-        final var kernelForGoto = items.stream()
-            // 先筛选出 I 中所有点后面是 term 的项
-            .filter(item -> item.getAfterDot().map(term::equals).orElse(false))
-            // 然后分别求出每一个项的后继项
-            // 这个项集就是后继项目集的核
-            .map(Item::getNextItem).flatMap(Optional::stream)
-            .collect(Collectors.toSet());
+    private int transitionOf(int state, int symbol) {
+        final int k = Arrays.binarySearch(transitionSymbols.get(state), symbol);
+        if (k < 0) {
+            throw new RuntimeException("No transition on %s from %d".formatted(symbols[symbol], state));
+        }
+        return k;
+    }
 
-        // 随后从后继项目集的核中构造闭包即可得到后继项目集
-        return constructClosure(kernelForGoto);
+    private int gotoIndex(int[] gotoBase, int state, int nonTerminal) {
+        return gotoBase[state] + transitionOf(state, nonTerminal);
     }
 
     /**
-     * 构造 LR(0) 规范项目集族
-     *
-     * @param initItem 起始项目 S -> . S'
-     * @return 规范项目集族
-     */
-    private List<Set<Item>> constructCanonicalLRCollection(Item initItem) {
-        // 先收集所有的文法符号备用
-        final var terms = new LinkedHashSet<Term>();
-        terms.addAll(nonTerminals);
-        terms.addAll(terminals);
-
-        // 构造初始项目集族
-        final var initClosure = constructClosure(Set.of(initItem));
-
-        // 同样以 BFS 形式搜索
-        final var result = new LinkedHashSet<>(Set.of(initClosure));
-        final var unexpanded = new ArrayDeque<>(Set.of(initClosure));
-
-        while (!unexpanded.isEmpty()) {
-            final var items = unexpanded.pollFirst();
-
-            // 对于每个未被探索的集族
-            for (final var term : terms) {
-                // 尝试对每一个文法符号都求一个后继项目集
-                final var to = constructGoto(items, term);
-                // 如果还没被加入到 result 中
-                if (!to.isEmpty() && !result.contains(to)) {
-                    // 就加入 result 和待探索列表中
-                    result.add(to);
-                    unexpanded.addLast(to);
+     * DeRemer 与 Pennello 的 digraph 算法: 对关系 R 求 F(x) = F'(x) ∪ ⋃{F(y) | x R y}.
+     * 深度优先遍历, 同一强连通分量中的结点得到相同的集合
+     * <br>
+     * 遍历用显式的栈代替递归: 很长的产生式链 (如 N1 -> N2 +, N2 -> N3 +, ...) 会使递归深度与非终结符个数相同, 导致栈溢出.
+     */
+    private static final class Digraph {
+        Digraph(IntList[] relation, long[] sets, int words) {
+            this.relation = relation;
+            this.sets = sets;
+            this.words = words;
+            this.depth = new int[relation.length];
+            this.stack = new int[relation.length];
+            this.path = new int[relation.length];
+            this.nextEdge = new int[relation.length];
+            this.entryDepth = new int[relation.length];
+        }
+
+        void run() {
+            for (int x = 0; x < relation.length; x++) {
+                if (depth[x] == 0) {
+                    traverse(x);
                 }
             }
         }
 
-        return new ArrayList<>(result);
+        private void traverse(int root) {
+            // path 为遍历路径上的结点, nextEdge 为各结点下一条待处理的边, entryDepth 为进入结点时的深度.
+            // 每个结点只进入一次, 因此路径长度不超过结点数
+            int length = 0;
+            enter(root);
+            path[length++] = root;
+
+            while (length > 0) {
+                final int x = path[length - 1];
+                final var edges = relation[x];
+                if (edges != null && nextEdge[x] < edges.size()) {
+                    final int y = edges.get(nextEdge[x]);
+                    if (depth[y] == 0) {
+                        // 先遍历 y, 回到 x 时再处理这条边
+                        enter(y);
+                        path[length++] = y;
+                        continue;
+                    }
+                    depth[x] = Math.min(depth[x], depth[y]);
+                    orInto(sets, x * words, sets, y * words, words);
+                    nextEdge[x]++;
+                    continue;
+                }
+
+                // x 的边都已处理, x 是强连通分量的根时分量中的结点都取 x 的集合
+                length--;
+                if (depth[x] == entryDepth[x]) {
+                    int y;
+                    do {
+                        y = stack[--top];
+                        depth[y] = Integer.MAX_VALUE;
+                        System.arraycopy(sets, x * words, sets, y * words, words);
+                    } while (y != x);
+                }
+            }
+        }
+
+        private void enter(int x) {
+            stack[top++] = x;
+            depth[x] = top;
+            entryDepth[x] = top;
+        }
+
+        private final IntList[] relation;
+        private final long[] sets;
+        private final int words;
+        private final int[] depth;
+        private final int[] stack;
+        private final int[] path;
+        private final int[] nextEdge;
+        private final int[] entryDepth;
+        private int top = 0;
+    }
+
+    /**
+     * 可增长的 int 列表
+     */
+    private static final class IntList {
+        void add(int value) {
+            if (size == values.length) {
+                values = Arrays.copyOf(values, size * 2);
+            }
+            values[size++] = value;
+        }
+
+        int get(int index) {
+            return values[index];
+        }
+
+        int size() {
+            return size;
+        }
+
+        private int[] values = new int[4];
+        private int size = 0;
     }
 
     /**
      * 构造 LR 分析表 (填充各个 status 中的 action 与 goto)
      */
     private void genTable() {
+        final var argumentProduction = productions.get(0);
+        final var gotoTarget = new int[symbols.length];
+
         // 依索引顺序对每个状态的每个项目
         for (final var status : allStatusInIndexOrder) {
-            for (final var item : including.get(status)) {
-                final var afterDotOpt = item.getAfterDot();
+            final int state = status.index();
+            final var transitionSymbol = transitionSymbols.get(state);
+            final var transitionTarget = transitionTargets.get(state);
+            for (int k = 0; k < transitionSymbol.length; k++) {
+                gotoTarget[transitionSymbol[k]] = transitionTarget[k];
+            }
+
+            final var items = closures.get(state);
+            int slot = -1;
+            for (int item = nextSetBit(items, 0); item >= 0; item = nextSetBit(items, item + 1)) {
+                slot++;
+                final var production = productions.get(itemProduction[item]);
+                final int symbol = itemAfterDot[item];
 
                 // 根据项目的点的位置和点后面跟着的文法符号进行分类
-                if (afterDotOpt.isEmpty()) {
-                    final var argumentProduction = productions.get(0);
-                    if (item.production().equals(argumentProduction)) {
+                if (symbol < 0) {
+                    if (production.equals(argumentProduction)) {
                         // S -> S' .
                         // 如果项目代表起始文法的末尾, 那么再遇到 EOF 就 accept 了
                         status.setAction(TokenKind.eof(), Action.accept());
                     } else {
                         // A -> alpha .
-                        // 如果项目代表某个产生式的末尾, 那么再遇到对于任何位于 follow(A) 内的文法符号都应该规约 A
-                        final var production = item.production();
-                        final var head = production.head();
-                        for (final var a : follow.get(head)) {
-                            status.setAction(a, Action.reduce(production));
+                        // SLR 对于任何位于 follow(A) 内的终结符都规约 A;
+                        // [A -> alpha ., a]
+                        // LR(1) 与 LALR(1) 则只在遇到该项目的向前看符号时规约
+                        final var lookahead = method == Method.SLR ? follow : lookaheads.get(state);
+                        final int from = (method == Method.SLR ? productionHead[itemProduction[item]] : slot) * terminalWords * 64;
+                        final int to = from + terminalWords * 64;
+                        for (int a = nextSetBit(lookahead, from); a >= 0 && a < to; a = nextSetBit(lookahead, a + 1)) {
+                            status.setAction((TokenKind) symbols[nonTerminalCount + a - from], Action.reduce(production));
                         }
                     }
 
                 } else {
-                    final var symbol = afterDotOpt.get();
-                    final var next = belongTo.get(constructGoto(including.get(status), symbol));
+                    final var next = allStatusInIndexOrder.get(gotoTarget[symbol]);
 
-                    if (symbol instanceof TokenKind tokenKind) {
+                    if (symbol >= nonTerminalCount) {
                         // A -> alpha . a beta
                         // 如果项目代表某个产生式的中间, 并且接着一个终结符的情况, 我们就移入该终结符
-                        status.setAction(tokenKind, Action.shift(next));
-                    } else if (symbol instanceof NonTerminal nonTerminal) {
+                        status.setAction((TokenKind) symbols[symbol], Action.shift(next));
+                    } else {
                         // A -> alpha . B beta
                         // 如果项目代表某个产生式的中间, 并且接着一个非终结符的情况,
                         // 我们就转移到 B 解析之后的状态中去 (即 GO(I, B) 对应的状态)
-                        status.setGoto(nonTerminal, next);
-                    } else {
-                        throw new RuntimeException("Unknown type of Term");
+                        status.setGoto((NonTerminal) symbols[symbol], next);
                     }
                 }
             }
@@ -407,4 +1039,84 @@ public class TableGenerator {
 
     // 我们在 Status.setAction/setGoto 中检查规约-规约冲突与移入-规约冲突
     // 如果有冲突, 它们会抛出 RuntimeException
+
+    //============================== 位图 ==============================
+
+    private static int words(int bits) {
+        return (bits + 63) >>> 6;
+    }
+
+    private static void set(long[] bits, int index) {
+        bits[index >>> 6] |= 1L << index;
+    }
+
+    private static boolean get(long[] bits, int index) {
+        return (bits[index >>> 6] & (1L << index)) != 0;
+    }
+
+    /**
+     * @return 该位原先是否为 0
+     */
+    private static boolean testAndSet(long[] bits, int index) {
+        final long mask = 1L << index;
+        final long word = bits[index >>> 6];
+        bits[index >>> 6] = word | mask;
+        return (word & mask) == 0;
+    }
+
+    /**
+     * @return 从 from 开始的第一个为 1 的位, 不存在时为 -1
+     */
+    private static int nextSetBit(long[] bits, int from) {
+        int word = from >>> 6;
+        if (word >= bits.length) {
+            return -1;
+        }
+
+        long remaining = bits[word] & (-1L << from);
+        while (remaining == 0) {
+            if (++word == bits.length) {
+                return -1;
+            }
+            remaining = bits[word];
+        }
+        return (word << 6) + Long.numberOfTrailingZeros(remaining);
+    }
+
+    /**
+     * 把 source 中从 sourceOffset 开始的 words 个字并入 target 中从 targetOffset 开始的 words 个字
+     *
+     * @return target 是否有改变
+     */
+    private static boolean orInto(long[] target, int targetOffset, long[] source, int sourceOffset, int words) {
+        boolean changed = false;
+        for (int i = 0; i < words; i++) {
+            final long word = target[targetOffset + i];
+            final long merged = word | source[sourceOffset + i];
+            if (merged != word) {
+                target[targetOffset + i] = merged;
+                changed = true;
+            }
+        }
+        return changed;
+    }
+
+    /**
+     * @return 位图中 index 之前为 1 的位数
+     */
+    private static int rank(long[] bits, int index) {
+        int count = 0;
+        for (int i = 0; i < index >>> 6; i++) {
+            count += Long.bitCount(bits[i]);
+        }
+        return count + Long.bitCount(bits[index >>> 6] & ((1L << index) - 1));
+    }
+
+    private static int bitCount(long[] bits) {
+        int count = 0;
+        for (int i = 0; i < bits.length; i++) {
+            count += Long.bitCount(bits[i]);
+        }
+        return count;
+    }
 }
@@ -0,0 +1,296 @@
+package cn.edu.hitsz.compiler.parser.table;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * 预先折叠好的单一产生式规约链
+ * <br>
+ * 形如 {@code E -> A}, {@code A -> B} 的单一产生式 (产生式体只有一个非终结符) 在表达式中几乎每个操作数都要规约一遍,
+ * 每次都要查 action, 通知观察者, 弹栈, 查 goto, 再压栈. 而规约单一产生式时状态栈的高度不变, 新状态只取决于栈顶之下的状态,
+ * 产生式头与向前看的终结符, 因此整条规约链都可以预先算出.
+ * <br>
+ * 该类对每个 (栈顶之下的状态 b, 刚刚 goto 的非终结符 X, 向前看的终结符) 三元组, 从 {@code goto(b, X)} 出发,
+ * 沿着单一产生式的规约一直走到第一个不是单一产生式规约的状态, 记录下终点状态以及沿途规约的 (状态, 产生式) 序列.
+ * 驱动程序在一次普通规约之后查到规约链, 就可以直接把栈顶换成终点状态, 只把沿途的规约报告给需要它们的观察者.
+ * <br>
+ * 内容相同的规约链只存一份. 三元组是稀疏的: 只有 goto 到含有单一产生式规约的状态时才可能有规约链, 因此只为这样的 (b, X)
+ * 存一行以终结符列号为下标的规约链编号, 内容相同的行也只存一份, (b, X) 到行号的映射存放在开放寻址的散列表中.
+ * 状态与产生式的编号与 {@link CompiledLRTable} 一致.
+ */
+public final class UnitChains {
+    /**
+     * 从稠密形式的分析表中找出所有单一产生式规约链
+     *
+     * @param table 稠密形式的分析表
+     * @return 规约链
+     */
+    public static UnitChains of(CompiledLRTable table) {
+        final int stateCount = table.getStateCount();
+        final int terminalCount = table.getTerminalCount();
+        final int nonTerminalCount = table.getNonTerminalCount();
+        final var productions = table.getProductions();
+        final var productionHeads = table.getProductionHeads();
+
+        final var unit = new boolean[productions.length];
+        for (int id = 0; id < productions.length; id++) {
+            final var body = productions[id].body();
+            unit[id] = body.size() == 1 && body.get(0) instanceof NonTerminal;
+        }
+
+        // 只有含有单一产生式规约的状态才可能是规约链的起点
+        final var hasUnitReduce = new boolean[stateCount];
+        for (int state = 0; state < stateCount; state++) {
+            for (int column = 0; column < terminalCount && !hasUnitReduce[state]; column++) {
+                final int action = table.getActionAt(state, column);
+                hasUnitReduce[state] = CompiledLRTable.kindOf(action) == CompiledLRTable.REDUCE
+                    && unit[CompiledLRTable.payloadOf(action)];
+            }
+        }
+
+        // 有规约链的 (b, X) 以 b * 非终结符数 + X 为键, 该值不超过 goto 表的大小; 各行按出现的顺序存放, 内容相同的行只存一份
+        var pairKeys = new int[16];
+        var pairRows = new int[16];
+        int pairCount = 0;
+        var rows = new int[0];
+        int rowCount = 0;
+        final Map<Row, Integer> rowIds = new HashMap<>();
+        final Map<List<Integer>, Integer> chainIds = new HashMap<>();
+        final List<Integer> targets = new ArrayList<>();
+        final List<Integer> starts = new ArrayList<>();
+        final List<Integer> steps = new ArrayList<>();
+
+        final var chain = new ArrayList<Integer>();
+        final var row = new int[terminalCount];
+        for (int below = 0; below < stateCount; below++) {
+            for (int head = 0; head < nonTerminalCount; head++) {
+                final int start = table.getGotoAt(below, head);
+                if (start < 0 || !hasUnitReduce[start]) {
+                    continue;
+                }
+
+                Arrays.fill(row, -1);
+                for (int column = 0; column < terminalCount; column++) {
+                    chain.clear();
+                    int state = start;
+                    while (true) {
+                        final int action = table.getActionAt(state, column);
+                        if (CompiledLRTable.kindOf(action) != CompiledLRTable.REDUCE) {
+                            break;
+                        }
+                        final int production = CompiledLRTable.payloadOf(action);
+                        if (!unit[production]) {
+                            break;
+                        }
+                        // 单一产生式之间成环的文法是二义的, LR 分析表中不会出现这种规约链
+                        if (chain.size() / 2 >= nonTerminalCount) {
+                            throw new RuntimeException("Cyclic unit productions in the parse table");
+                        }
+
+                        chain.add(state);
+                        chain.add(production);
+                        state = table.getGotoAt(below, productionHeads[production]);
+                        if (state < 0) {
+                            throw new RuntimeException("Unit reduction without goto in state " + below);
+                        }
+                    }
+                    if (chain.isEmpty()) {
+                        continue;
+                    }
+
+                    // 以终点状态加沿途的规约作为键去重
+                    chain.add(state);
+                    final int target = state;
+                    row[column] = chainIds.computeIfAbsent(List.copyOf(chain), key -> {
+                        targets.add(target);
+                        starts.add(steps.size());
+                        steps.addAll(key.subList(0, key.size() - 1));
+                        return targets.size() - 1;
+                    });
+                }
+
+                final var key = new Row(row.clone());
+                var id = rowIds.get(key);
+                if (id == null) {
+                    id = rowCount++;
+                    rowIds.put(key, id);
+                    final int offset = Math.multiplyExact(id, terminalCount);
+                    if (offset + terminalCount > rows.length) {
+                        rows = Arrays.copyOf(rows, Math.max(offset + terminalCount, Math.multiplyExact(rows.length, 2)));
+                    }
+                    System.arraycopy(row, 0, rows, offset, terminalCount);
+                }
+                if (pairCount == pairKeys.length) {
+                    pairKeys = Arrays.copyOf(pairKeys, pairCount * 2);
+                    pairRows = Arrays.copyOf(pairRows, pairCount * 2);
+                }
+                pairKeys[pairCount] = below * nonTerminalCount + head;
+                pairRows[pairCount++] = id;
+            }
+        }
+
+        // 装载因子不超过 1/2
+        final int capacity = Integer.highestOneBit(Math.max(pairCount, 1)) * 4;
+        final var keys = new int[capacity];
+        final var values = new int[capacity];
+        Arrays.fill(keys, -1);
+        for (int i = 0; i < pairCount; i++) {
+            int slot = slotOf(pairKeys[i], capacity);
+            while (keys[slot] >= 0) {
+                slot = (slot + 1) & (capacity - 1);
+            }
+            keys[slot] = pairKeys[i];
+            values[slot] = pairRows[i];
+        }
+        starts.add(steps.size());
+
+        final var stepStates = new int[steps.size() / 2];
+        final var stepProductions = new int[steps.size() / 2];
+        for (int i = 0; i < stepStates.length; i++) {
+            stepStates[i] = steps.get(2 * i);
+            stepProductions[i] = steps.get(2 * i + 1);
+        }
+        final var chainStarts = new int[starts.size()];
+        for (int i = 0; i < chainStarts.length; i++) {
+            chainStarts[i] = starts.get(i) / 2;
+        }
+
+        return new UnitChains(
+            table.getColumnOfCode(), productionHeads, terminalCount, nonTerminalCount,
+            keys, values, Arrays.copyOf(rows, rowCount * terminalCount),
+            targets.stream().mapToInt(Integer::intValue).toArray(), chainStarts, stepStates, stepProductions
+        );
+    }
+
+    /**
+     * 查找一次规约之后紧接着的单一产生式规约链
+     *
+     * @param below        规约后栈顶之下的状态, 即 goto 的出发状态
+     * @param production   刚刚规约的产生式
+     * @param terminalCode 向前看的词法单元类型的码点
+     * @return 规约链的编号, 没有规约链时为 -1
+     */
+    public int find(int below, int production, int terminalCode) {
+        final int index = terminalCode + 1;
+        if (index < 0 || index >= columnOfCode.length || columnOfCode[index] < 0) {
+            return -1;
+        }
+
+        final int key = below * nonTerminalCount + productionHeads[production];
+        final int mask = keys.length - 1;
+        for (int slot = slotOf(key, keys.length); keys[slot] >= 0; slot = (slot + 1) & mask) {
+            if (keys[slot] == key) {
+                return rows[values[slot] * terminalCount + columnOfCode[index]];
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * @param chain 规约链的编号
+     * @return 整条规约链走完之后的栈顶状态
+     */
+    public int getTarget(int chain) {
+        return targets[chain];
+    }
+
+    /**
+     * @param chain 规约链的编号
+     * @return 规约链中第一步在 {@link #getStepState}/{@link #getStepProduction} 中的下标
+     */
+    public int getStepBegin(int chain) {
+        return starts[chain];
+    }
+
+    /**
+     * @param chain 规约链的编号
+     * @return 规约链最后一步之后的下标
+     */
+    public int getStepEnd(int chain) {
+        return starts[chain + 1];
+    }
+
+    /**
+     * @param step 步骤的下标
+     * @return 该步规约时的栈顶状态
+     */
+    public int getStepState(int step) {
+        return stepStates[step];
+    }
+
+    /**
+     * @param step 步骤的下标
+     * @return 该步规约的产生式
+     */
+    public int getStepProduction(int step) {
+        return stepProductions[step];
+    }
+
+    /**
+     * @return 不同的规约链的条数
+     */
+    public int size() {
+        return targets.length;
+    }
+
+    private UnitChains(
+        int[] columnOfCode, int[] productionHeads, int terminalCount, int nonTerminalCount,
+        int[] keys, int[] values, int[] rows,
+        int[] targets, int[] starts, int[] stepStates, int[] stepProductions
+    ) {
+        this.columnOfCode = columnOfCode;
+        this.productionHeads = productionHeads;
+        this.terminalCount = terminalCount;
+        this.nonTerminalCount = nonTerminalCount;
+        this.keys = keys;
+        this.values = values;
+        this.rows = rows;
+        this.targets = targets;
+        this.starts = starts;
+        this.stepStates = stepStates;
+        this.stepProductions = stepProductions;
+    }
+
+    private final int[] columnOfCode;
+    private final int[] productionHeads;
+    private final int terminalCount;
+    private final int nonTerminalCount;
+
+    /**
+     * 开放寻址 (线性探测) 的散列表: 键为 {@code 状态 * 非终结符数 + 非终结符}, 空位为 -1; 值为该处规约链所在的行号.
+     * 不在表中的 (状态, 非终结符) 没有任何规约链
+     */
+    private final int[] keys;
+    private final int[] values;
+
+    /**
+     * 各行按 {@code [行][终结符]} 存放的规约链编号, 没有规约链处为 -1
+     */
+    private final int[] rows;
+    private final int[] targets;
+    private final int[] starts;
+    private final int[] stepStates;
+    private final int[] stepProductions;
+
+    private static int slotOf(int key, int capacity) {
+        return (key * 0x9E3779B9) >>> (Integer.SIZE - Integer.numberOfTrailingZeros(capacity)) & (capacity - 1);
+    }
+
+    /**
+     * 以内容判等的一行规约链编号, 用于合并相同的行
+     */
+    private record Row(int[] chains) {
+        @Override
+        public boolean equals(Object obj) {
+            return obj instanceof Row other && Arrays.equals(chains, other.chains);
+        }
+
+        @Override
+        public int hashCode() {
+            return Arrays.hashCode(chains);
+        }
+    }
+}
@@ -5,7 +5,7 @@ import cn.edu.hitsz.compiler.utils.FileUtils;
 
 import java.util.ArrayList;
 import java.util.Comparator;
-import java.util.HashMap;
+import java.util.LinkedHashMap;
 import java.util.Map;
 
 /**
@@ -44,8 +44,10 @@ public class SymbolTable {
         if (has(text)) {
             throw new RuntimeException("该符号已在表中存在");
         } else {
-            SymbolTableEntry symbolTableEntry = new SymbolTableEntry(text);
-            symbolTable.put(text, symbolTableEntry);
+            // 条目的文本统一使用驻留池中的实例
+            final var pooledText = textPool.get(textPool.intern(text));
+            SymbolTableEntry symbolTableEntry = new SymbolTableEntry(pooledText);
+            symbolTable.put(pooledText, symbolTableEntry);
             return symbolTableEntry;
         }
         // throw new NotImplementedException();
@@ -63,6 +65,65 @@ public class SymbolTable {
         // throw new NotImplementedException();
     }
 
+    /**
+     * 将另一个符号表中本表还没有的条目按其加入顺序加入本表. 合并只针对词法分析阶段, 被合并的条目不应已经设置了类型
+     *
+     * @param other 另一个符号表
+     */
+    public void mergeFrom(SymbolTable other) {
+        for (final var entry : other.symbolTable.values()) {
+            if (entry.getType() != null) {
+                throw new RuntimeException("Can NOT merge a typed entry: " + entry.getText());
+            }
+            if (!has(entry.getText())) {
+                add(entry.getText());
+            }
+        }
+    }
+
+    /**
+     * 登记对符号的一次引用, 符号不在表中时先加入它
+     * <br>
+     * 引用计数只由增量词法分析 ({@link cn.edu.hitsz.compiler.lexer.IncrementalLexer}) 维护, 源代码被编辑后,
+     * 不再被引用的符号会随之移出符号表. 一次性的词法分析不会维护引用计数.
+     *
+     * @param text 符号的文本表示
+     * @return 该符号的条目
+     */
+    public SymbolTableEntry retain(String text) {
+        final var entry = has(text) ? get(text) : add(text);
+        entry.setReferenceCount(entry.getReferenceCount() + 1);
+        return entry;
+    }
+
+    /**
+     * 撤销对符号的一次引用, 引用计数降为 0 时将其移出符号表
+     *
+     * @param text 符号的文本表示
+     * @throws RuntimeException 该符号在表中不存在, 或其引用计数已经为 0
+     */
+    public void release(String text) {
+        final var entry = get(text);
+        final int count = entry.getReferenceCount();
+        if (count <= 0) {
+            throw new RuntimeException("Can NOT release an unreferenced entry: " + text);
+        }
+
+        entry.setReferenceCount(count - 1);
+        if (count == 1) {
+            symbolTable.remove(text);
+        }
+    }
+
+    /**
+     * 获得与词法分析器共享的词素文本驻留池
+     *
+     * @return 驻留池
+     */
+    public TextPool getTextPool() {
+        return textPool;
+    }
+
     /**
      * 获得符号表的所有条目以供 {@code dumpTable} 使用
      *
@@ -79,21 +140,42 @@ public class SymbolTable {
      * @param path 输出文件路径
      */
     public void dumpTable(String path) {
+        dumpTable(path, true);
+    }
+
+    /**
+     * 将符号表按格式输出, 但所有条目的类型都输出为 null
+     * <br>
+     * 词法分析与语法分析交叠进行时, 拿不到一份 "语义分析前" 的符号表. 由于词法分析只会新增条目而不会设置类型,
+     * 语义分析也不会新增条目, 所以分析结束后去掉类型信息的符号表与语义分析前的符号表是一致的.
+     *
+     * @param path 输出文件路径
+     */
+    public void dumpTableWithoutType(String path) {
+        dumpTable(path, false);
+    }
+
+    private void dumpTable(String path, boolean withType) {
         final var entriesInOrder = new ArrayList<>(getAllEntries().values());
         entriesInOrder.sort(Comparator.comparing(SymbolTableEntry::getText));
 
         final var lines = new ArrayList<String>();
         for (final var entry : entriesInOrder) {
             // null in %s will be "null"
-            lines.add("(%s, %s)".formatted(entry.getText(), entry.getType()));
+            lines.add("(%s, %s)".formatted(entry.getText(), withType ? entry.getType() : null));
         }
 
         FileUtils.writeLines(path, lines);
     }
 
     /**
-     * 符号表
+     * 符号表, 条目按加入的先后顺序排列, 以便多个符号表能以确定的顺序合并
+     */
+    private final Map<String, SymbolTableEntry> symbolTable = new LinkedHashMap<>();
+
+    /**
+     * 标识符与常数文本的驻留池
      */
-    private static Map<String, SymbolTableEntry> symbolTable = new HashMap<>();
+    private final TextPool textPool = new TextPool();
 }
 
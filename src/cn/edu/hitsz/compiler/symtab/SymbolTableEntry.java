@@ -40,6 +40,19 @@ public class SymbolTableEntry {
         this.type = type;
     }
 
+    /**
+     * @return 该符号在源代码中被引用的次数, 仅由增量词法分析维护
+     * @see SymbolTable#retain(String)
+     */
+    public int getReferenceCount() {
+        return referenceCount;
+    }
+
+    void setReferenceCount(int referenceCount) {
+        this.referenceCount = referenceCount;
+    }
+
     private final String text;
     private SourceCodeType type;
+    private int referenceCount = 0;
 }
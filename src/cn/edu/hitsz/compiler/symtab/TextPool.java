@@ -0,0 +1,138 @@
+package cn.edu.hitsz.compiler.symtab;
+
+import java.util.Arrays;
+
+/**
+ * 词素文本的驻留池
+ * <br>
+ * 源代码中同一个标识符或常数往往会出现很多次, 驻留池保证相同的文本只对应一个 {@link String} 实例, 并为每个不同的文本分配一个从 0
+ * 开始的稠密编号. 词法分析器可以直接用窗口中的字符区间查询, 命中时不产生任何分配.
+ * <br>
+ * 驻留池由 {@link SymbolTable} 持有并与词法分析器共享, 因此符号表中条目的文本与词法单元的文本是同一个实例.
+ * <br>
+ * 实现上采用线性探测的开放寻址散列表, 散列函数与 {@link String#hashCode()} 一致.
+ */
+public class TextPool {
+    /**
+     * 查询或驻留字符区间 {@code chars[begin, end)} 表示的文本
+     *
+     * @param chars 字符数组
+     * @param begin 起点
+     * @param end   终点 (不含)
+     * @return 该文本的编号
+     */
+    public int intern(char[] chars, int begin, int end) {
+        int hash = 0;
+        for (int i = begin; i < end; i++) {
+            hash = 31 * hash + chars[i];
+        }
+
+        final int mask = slots.length - 1;
+        for (int slot = spread(hash) & mask; ; slot = (slot + 1) & mask) {
+            final int id = slots[slot] - 1;
+            if (id < 0) {
+                return insert(slot, hash, new String(chars, begin, end - begin));
+            }
+            if (hashes[id] == hash && contentEquals(texts[id], chars, begin, end)) {
+                return id;
+            }
+        }
+    }
+
+    /**
+     * 查询或驻留文本
+     *
+     * @param text 文本
+     * @return 该文本的编号
+     */
+    public int intern(String text) {
+        final int hash = text.hashCode();
+        final int mask = slots.length - 1;
+        for (int slot = spread(hash) & mask; ; slot = (slot + 1) & mask) {
+            final int id = slots[slot] - 1;
+            if (id < 0) {
+                return insert(slot, hash, text);
+            }
+            if (hashes[id] == hash && texts[id].equals(text)) {
+                return id;
+            }
+        }
+    }
+
+    /**
+     * @param id 文本编号
+     * @return 编号对应的驻留文本
+     */
+    public String get(int id) {
+        if (id < 0 || id >= size) {
+            throw new RuntimeException("Unknown text id: " + id);
+        }
+
+        return texts[id];
+    }
+
+    /**
+     * @return 池中不同文本的个数, 即下一个被分配的编号
+     */
+    public int size() {
+        return size;
+    }
+
+    private int insert(int slot, int hash, String text) {
+        final int id = size++;
+        if (id == texts.length) {
+            texts = Arrays.copyOf(texts, id * 2);
+            hashes = Arrays.copyOf(hashes, id * 2);
+        }
+        texts[id] = text;
+        hashes[id] = hash;
+        slots[slot] = id + 1;
+
+        // 装载因子保持在 1/2 以下
+        if (size * 2 > slots.length) {
+            rehash();
+        }
+        return id;
+    }
+
+    private void rehash() {
+        slots = new int[slots.length * 2];
+        final int mask = slots.length - 1;
+        for (int id = 0; id < size; id++) {
+            int slot = spread(hashes[id]) & mask;
+            while (slots[slot] != 0) {
+                slot = (slot + 1) & mask;
+            }
+            slots[slot] = id + 1;
+        }
+    }
+
+    /**
+     * 与 HashMap 相同, 把高位混入低位, 避免只用低位选槽时冲突过多
+     */
+    private static int spread(int hash) {
+        return hash ^ (hash >>> 16);
+    }
+
+    private static boolean contentEquals(String text, char[] chars, int begin, int end) {
+        if (text.length() != end - begin) {
+            return false;
+        }
+        for (int i = begin; i < end; i++) {
+            if (text.charAt(i - begin) != chars[i]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static final int INITIAL_CAPACITY = 64;
+
+    /**
+     * 散列槽, 存放 "文本编号 + 1", 0 表示空槽
+     */
+    private int[] slots = new int[INITIAL_CAPACITY * 2];
+    private String[] texts = new String[INITIAL_CAPACITY];
+    private int[] hashes = new int[INITIAL_CAPACITY];
+    private int size = 0;
+}
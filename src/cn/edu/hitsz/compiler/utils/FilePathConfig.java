@@ -25,6 +25,16 @@ public final class FilePathConfig {
      */
     public final static String LR1_TABLE_PATH = "data/in/LR1_table.csv";
 
+    /**
+     * 预编译的二进制 LR 分析表, 由 {@link cn.edu.hitsz.compiler.parser.table.TableCompiler} 生成, 可以不存在
+     */
+    public final static String LR1_TABLE_BINARY_PATH = "data/in/LR1_table.bin";
+
+    /**
+     * {@link cn.edu.hitsz.compiler.parser.table.TableCache} 保存构造出的分析表的目录, 可以随时删除
+     */
+    public final static String TABLE_CACHE_DIR = "data/cache";
+
 
     //==================================== 输出文件 ========================================//
     /**
@@ -1,6 +1,9 @@
 package cn.edu.hitsz.compiler.utils;
 
 import java.io.IOException;
+import java.io.Reader;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
 import java.nio.charset.StandardCharsets;
 import java.nio.file.FileAlreadyExistsException;
 import java.nio.file.Files;
@@ -36,6 +39,20 @@ public final class FileUtils {
         }
     }
 
+    /**
+     * 打开文本文件并以 UTF-8 解码的字符流形式返回, 文件内容不会被一次性读入内存
+     *
+     * @param path 文本文件路径
+     * @return 字符流, 由调用者负责关闭
+     */
+    public static Reader openReader(String path) {
+        try {
+            return Channels.newReader(FileChannel.open(Paths.get(path)), StandardCharsets.UTF_8);
+        } catch (IOException e) {
+            throw new RuntimeException("IO Exception on " + path, e);
+        }
+    }
+
     /**
      * 将内容写入指定文件
      *
@@ -0,0 +1,85 @@
+package cn.edu.hitsz.compiler.utils;
+
+import java.io.IOException;
+import java.io.Reader;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * 基于内存映射的 ASCII 文本文件字符流
+ * <br>
+ * 源语言的所有词法单元都由 ASCII 字符组成 (见码点文件), 因此可以跳过解码器, 直接把映射进来的字节逐个拓宽为字符.
+ * 文件内容由操作系统按页调入, 不会在 Java 堆中产生整个文件的副本, 也不会产生按行切分的中间字符串.
+ * <br>
+ * 超过 {@link #SEGMENT_SIZE} 的文件会被分段依次映射. 遇到非 ASCII 字节时会抛出异常, 这类源文件请使用
+ * {@link FileUtils#openReader(String)} 按 UTF-8 解码读取.
+ */
+public class MappedFileReader extends Reader {
+    /**
+     * 每次映射的最大字节数
+     */
+    public static final long SEGMENT_SIZE = 1L << 30;
+
+    /**
+     * @param path 文件路径
+     */
+    public MappedFileReader(String path) {
+        this.path = path;
+        try {
+            this.channel = FileChannel.open(Paths.get(path), StandardOpenOption.READ);
+            this.size = channel.size();
+        } catch (IOException e) {
+            throw new RuntimeException("IO Exception on " + path, e);
+        }
+    }
+
+    @Override
+    public int read(char[] dst, int off, int len) throws IOException {
+        if (segment == null || !segment.hasRemaining()) {
+            if (mapped >= size) {
+                return -1;
+            }
+
+            final long segmentSize = Math.min(SEGMENT_SIZE, size - mapped);
+            segment = channel.map(FileChannel.MapMode.READ_ONLY, mapped, segmentSize);
+            mapped += segmentSize;
+        }
+
+        // 先整块拷出映射区, 再在堆内数组上拓宽, 后者是可以被 JIT 向量化的简单循环
+        final int count = Math.min(Math.min(len, scratch.length), segment.remaining());
+        segment.get(scratch, 0, count);
+
+        // 只有 ASCII 字节的最高位为 0, 把所有字节或起来即可一次性检查
+        int bits = 0;
+        for (int i = 0; i < count; i++) {
+            final byte b = scratch[i];
+            bits |= b;
+            dst[off + i] = (char) b;
+        }
+
+        if (bits < 0) {
+            throw new RuntimeException("Non-ASCII byte in " + path + ", which can not be read through memory mapping");
+        }
+
+        return count;
+    }
+
+    @Override
+    public void close() throws IOException {
+        segment = null;
+        channel.close();
+    }
+
+    private final String path;
+    private final FileChannel channel;
+    private final long size;
+
+    /**
+     * 已经映射过的字节数, 即下一段映射的起点
+     */
+    private long mapped = 0;
+    private MappedByteBuffer segment = null;
+    private final byte[] scratch = new byte[1 << 16];
+}
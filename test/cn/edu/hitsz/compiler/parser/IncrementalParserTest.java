@@ -0,0 +1,254 @@
+package cn.edu.hitsz.compiler.parser;
+
+import cn.edu.hitsz.compiler.lexer.IncrementalLexer;
+import cn.edu.hitsz.compiler.lexer.Token;
+import cn.edu.hitsz.compiler.lexer.TokenKind;
+import cn.edu.hitsz.compiler.parser.table.CompiledLRTable;
+import cn.edu.hitsz.compiler.parser.table.ParseTable;
+import cn.edu.hitsz.compiler.parser.table.Production;
+import cn.edu.hitsz.compiler.parser.table.Status;
+import cn.edu.hitsz.compiler.parser.table.TableLoader;
+import cn.edu.hitsz.compiler.symtab.SymbolTable;
+import cn.edu.hitsz.compiler.utils.FilePathConfig;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Objects;
+import java.util.Random;
+
+/**
+ * {@link IncrementalParser} 的回归测试: 观察者只收到重新分析的语句中的动作; 编辑引入语法错误, 再改回正确之后,
+ * 增量分析的结果应当与从头分析完全相同
+ * <br>
+ * 在项目根目录下运行 (需要 data/in 中的码点文件与分析表), 任何一项检查失败都会抛出 {@link AssertionError}:
+ * <pre>
+ *     java -cp out cn.edu.hitsz.compiler.parser.IncrementalParserTest
+ * </pre>
+ */
+public class IncrementalParserTest {
+    public static void main(String[] args) {
+        TokenKind.loadTokenKinds();
+        final var test = new IncrementalParserTest(CompiledLRTable.compile(new TableLoader().load(FilePathConfig.LR1_TABLE_PATH)));
+        test.observersSeeEditedStatementOnly();
+        test.errorThenFix();
+        test.editWhileBroken();
+        test.randomEdits(Long.parseLong(args.length > 0 ? args[0] : "20"));
+        System.out.println("增量语法分析测试通过");
+    }
+
+    private IncrementalParserTest(ParseTable table) {
+        this.table = table;
+        this.syncToken = TokenKind.fromString("Semicolon");
+    }
+
+    /**
+     * 改写中间的一个语句后, 观察者收到的动作应当恰好是从头分析时这个语句的那一段: 从移入它的第一个词法单元到移入它的分号
+     */
+    private void observersSeeEditedStatementOnly() {
+        final var lexer = new IncrementalLexer(new SymbolTable());
+        final var parser = newParser();
+        final var recorder = new Recorder();
+        parser.registerObserver(recorder);
+        parser.parse(lexer.load(program(40)));
+
+        // 只改写分号之前的部分, 词法分析报告的改动恰好是这一个语句
+        final int start = lineStart(lexer, 20);
+        final int semicolon = lexer.getSource().toString().indexOf(';', start);
+        lexer.edit(start, semicolon - start, "b = a * (a + 3)");
+        final var edit = lexer.getLastEdit();
+        check(edit.inserted() == 10, "unexpected token edit " + edit);
+        recorder.actions.clear();
+        parser.reparse(lexer.getTokens(), edit);
+
+        final var fresh = newParser();
+        final var freshRecorder = new Recorder();
+        fresh.registerObserver(freshRecorder);
+        fresh.parse(new IncrementalLexer(new SymbolTable()).load(lexer.getSource()));
+
+        // 从头分析时, 从移入编辑范围的第一个词法单元到移入其最后一个词法单元 (分号) 为止的动作
+        int begin = -1;
+        int end = -1;
+        int shifts = 0;
+        for (int i = 0; i < freshRecorder.actions.size() && end < 0; i++) {
+            if (freshRecorder.actions.get(i).startsWith("shift ")) {
+                if (shifts == edit.from()) {
+                    begin = i;
+                }
+                if (shifts == edit.from() + edit.inserted() - 1) {
+                    end = i + 1;
+                }
+                shifts++;
+            }
+        }
+        final var expected = freshRecorder.actions.subList(begin, end);
+        check(recorder.actions.equals(expected), "observers got %s instead of %s".formatted(recorder.actions, expected));
+        check(expected.get(0).equals("shift (id,b)") && expected.get(expected.size() - 1).equals("shift (Semicolon,)")
+            && expected.contains("reduce S -> id = E"), "unexpected actions of the edited statement: " + expected);
+    }
+
+    /**
+     * 插入 {@code a = ;} 后分析出错, 改回 {@code a = 1;} 后应当能继续分析, 之后的编辑也应恢复为增量分析
+     */
+    private void errorThenFix() {
+        final var lexer = new IncrementalLexer(new SymbolTable());
+        final var parser = newParser();
+        parser.parse(lexer.load(program(40)));
+
+        final int offset = lineStart(lexer, 20);
+        lexer.edit(offset, 0, "a = ;\n");
+        final var error = reparse(parser, lexer);
+        check(error != null, "syntax error is not reported");
+        checkSameAsFresh(parser, lexer, error);
+
+        lexer.edit(offset, "a = ;\n".length(), "a = 1;\n");
+        check(reparse(parser, lexer) == null, "reparse fails after the error is fixed");
+        checkSameAsFresh(parser, lexer, null);
+
+        // 检查点已经完整重建, 编辑一个语句只需重新分析这个语句
+        lexer.edit(lineStart(lexer, 30), 0, "c = 3 - a;\n");
+        final int reparsed = parser.reparse(lexer.getTokens(), lexer.getLastEdit());
+        check(reparsed <= 12, "reparse is no longer incremental: " + reparsed + " tokens");
+        checkSameAsFresh(parser, lexer, null);
+    }
+
+    /**
+     * 出错之后先在错误之前与之后各编辑一次, 错误仍然存在, 最后再改正
+     */
+    private void editWhileBroken() {
+        final var lexer = new IncrementalLexer(new SymbolTable());
+        final var parser = newParser();
+        parser.parse(lexer.load(program(40)));
+
+        lexer.edit(lineStart(lexer, 25), 0, "b = (a + 1;\n");
+        checkSameAsFresh(parser, lexer, reparse(parser, lexer));
+        lexer.edit(lineStart(lexer, 5), 0, "int b;\n");
+        checkSameAsFresh(parser, lexer, reparse(parser, lexer));
+        lexer.edit(lineStart(lexer, 35), 0, "a = 8;\n");
+        checkSameAsFresh(parser, lexer, reparse(parser, lexer));
+
+        final int offset = lexer.getSource().toString().indexOf("b = (a + 1;");
+        lexer.edit(offset + "b = (a + 1".length(), 0, ")");
+        check(reparse(parser, lexer) == null, "reparse fails after the error is fixed");
+        checkSameAsFresh(parser, lexer, null);
+    }
+
+    /**
+     * 随机地增删, 替换语句, 其中一部分含有语法错误, 每次编辑后都与从头分析比较
+     */
+    private void randomEdits(long seed) {
+        final var random = new Random(seed);
+        final var lexer = new IncrementalLexer(new SymbolTable());
+        final var parser = newParser();
+        parser.parse(lexer.load(program(40)));
+
+        for (int i = 0; i < 500; i++) {
+            final int line = random.nextInt(lineCount(lexer) - 1);
+            final int start = lineStart(lexer, line);
+            final int end = lineStart(lexer, line + 1);
+            final var inserted = random.nextInt(4) == 0
+                ? BROKEN_STATEMENTS[random.nextInt(BROKEN_STATEMENTS.length)]
+                : STATEMENTS[random.nextInt(STATEMENTS.length)];
+            switch (random.nextInt(3)) {
+                case 0 -> lexer.edit(start, 0, inserted);
+                case 1 -> lexer.edit(start, lineCount(lexer) > 4 ? end - start : 0, "");
+                default -> lexer.edit(start, end - start, inserted);
+            }
+            checkSameAsFresh(parser, lexer, reparse(parser, lexer));
+        }
+    }
+
+    private IncrementalParser newParser() {
+        return new IncrementalParser(new SymbolTable(), table, syncToken);
+    }
+
+    /**
+     * @return 语法错误的信息, 分析成功时为 null
+     */
+    private static String reparse(IncrementalParser parser, IncrementalLexer lexer) {
+        try {
+            parser.reparse(lexer.getTokens(), lexer.getLastEdit());
+            return null;
+        } catch (RuntimeException e) {
+            return e.getMessage();
+        }
+    }
+
+    /**
+     * 从头分析当前的源代码, 比较是否出错, 出错的位置与检查点的个数
+     */
+    private void checkSameAsFresh(IncrementalParser parser, IncrementalLexer lexer, String error) {
+        final var fresh = newParser();
+        String freshError = null;
+        try {
+            fresh.parse(new IncrementalLexer(new SymbolTable()).load(lexer.getSource()));
+        } catch (RuntimeException e) {
+            freshError = e.getMessage();
+        }
+
+        check(Objects.equals(error, freshError), "expected error %s but got %s".formatted(freshError, error));
+        check(parser.getCheckpointCount() == fresh.getCheckpointCount(),
+            "expected %d checkpoints but got %d".formatted(fresh.getCheckpointCount(), parser.getCheckpointCount()));
+    }
+
+    private static String program(int statements) {
+        final var builder = new StringBuilder("int a;\nint b;\nint c;\n");
+        for (int i = 0; i < statements; i++) {
+            builder.append(STATEMENTS[i % STATEMENTS.length]);
+        }
+        return builder.append("return a;\n").toString();
+    }
+
+    private static int lineStart(IncrementalLexer lexer, int line) {
+        final var source = lexer.getSource();
+        int offset = 0;
+        for (int i = 0; i < line; i++) {
+            while (source.charAt(offset) != '\n') {
+                offset++;
+            }
+            offset++;
+        }
+        return offset;
+    }
+
+    private static int lineCount(IncrementalLexer lexer) {
+        return (int) lexer.getSource().chars().filter(c -> c == '\n').count();
+    }
+
+    /**
+     * 按顺序记录收到的移入与规约
+     */
+    private static final class Recorder implements ActionObserver {
+        @Override
+        public void whenShift(Status currentStatus, Token currentToken) {
+            actions.add("shift " + currentToken);
+        }
+
+        @Override
+        public void whenReduce(Status currentStatus, Production production) {
+            actions.add("reduce " + production);
+        }
+
+        @Override
+        public void whenAccept(Status currentStatus) {
+            actions.add("accept");
+        }
+
+        @Override
+        public void setSymbolTable(SymbolTable table) {
+        }
+
+        private final List<String> actions = new ArrayList<>();
+    }
+
+    private static void check(boolean condition, String message) {
+        if (!condition) {
+            throw new AssertionError(message);
+        }
+    }
+
+    private static final String[] STATEMENTS = {"a = 8;\n", "b = a * (a + 3);\n", "c = 3 - a;\n", "int c;\n"};
+    private static final String[] BROKEN_STATEMENTS = {"a = ;\n", "int ;\n", "b = (a + 1;\n", "c = a a;\n"};
+
+    private final ParseTable table;
+    private final TokenKind syncToken;
+}